@@ -0,0 +1,48 @@
+package org.rjo.chess.bulldog.bench;
+
+import java.util.Map;
+
+import org.rjo.chess.bulldog.game.Fen;
+import org.rjo.chess.bulldog.game.Position;
+
+/**
+ * The fixed corpus of positions used by the benchmarks, taken from the perft test positions. The names are used as JMH <code>@Param</code>
+ * values.
+ *
+ * @author rich
+ * @see "https://www.chessprogramming.org/Perft_Results"
+ */
+final class BenchmarkPositions {
+
+   static final String INITIAL = "initial";
+   static final String KIWIPETE = "kiwipete";
+   static final String POSN3 = "posn3";
+   static final String POSN4 = "posn4";
+   static final String POSN5 = "posn5";
+   static final String POSN6 = "posn6";
+   static final String PROMOTION = "promotion";
+
+   private static final Map<String, String> FENS = Map.of( //
+         INITIAL, "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 0", //
+         KIWIPETE, "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 0", //
+         POSN3, "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 0", //
+         POSN4, "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1", //
+         POSN5, "rnbqkb1r/pp1p1ppp/2p5/4P3/2B5/8/PPP1NnPP/RNBQK2R w KQkq - 0 6", //
+         POSN6, "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10", //
+         PROMOTION, "n1n5/PPPk4/8/8/8/8/4Kppp/5N1N b - - 0 1");
+
+   private BenchmarkPositions() {
+   }
+
+   /** @return the FEN of the position with the given name */
+   static String fen(String name) {
+      String fen = FENS.get(name);
+      if (fen == null) { throw new IllegalArgumentException("unknown benchmark position '" + name + "'"); }
+      return fen;
+   }
+
+   /** @return the position with the given name */
+   static Position position(String name) {
+      return Fen.decode(fen(name)).getPosition();
+   }
+}
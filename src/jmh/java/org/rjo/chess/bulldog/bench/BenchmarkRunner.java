@@ -0,0 +1,32 @@
+package org.rjo.chess.bulldog.bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks, writing the results in JSON format to {@value #DEFAULT_RESULT_FILE}.
+ * <p>
+ * Usage: BenchmarkRunner [&lt;JMH options&gt;] [&lt;benchmark regexp&gt;]
+ * <p>
+ * The standard JMH options are accepted, e.g. <code>-rff other.json</code> to change the result file or <code>-f 3</code> for three
+ * forks. For example, <code>java -jar target/benchmarks.jar PositionBenchmark.evaluate</code> only runs the evaluation benchmark.
+ *
+ * @author rich
+ */
+public class BenchmarkRunner {
+
+   static final String DEFAULT_RESULT_FILE = "target/jmh-result.json";
+
+   public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+      CommandLineOptions cmdOptions = new CommandLineOptions(args);
+      ChainedOptionsBuilder options = new OptionsBuilder().parent(cmdOptions);
+      if (!cmdOptions.getResultFormat().hasValue()) { options.resultFormat(ResultFormatType.JSON); }
+      if (!cmdOptions.getResult().hasValue()) { options.result(DEFAULT_RESULT_FILE); }
+      new Runner(options.build()).run();
+   }
+}
@@ -0,0 +1,54 @@
+package org.rjo.chess.bulldog.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.rjo.chess.bulldog.game.Fen;
+import org.rjo.chess.bulldog.game.Game;
+import org.rjo.chess.bulldog.game.Position;
+
+/**
+ * Decoding and encoding of FEN strings.
+ *
+ * @author rich
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FenBenchmark {
+
+   @Param({ BenchmarkPositions.INITIAL, BenchmarkPositions.KIWIPETE, BenchmarkPositions.POSN6 })
+   public String position;
+
+   private String fen;
+   private Position posn;
+
+   @Setup
+   public void setup() {
+      fen = BenchmarkPositions.fen(position);
+      posn = BenchmarkPositions.position(position);
+   }
+
+   @Benchmark
+   public Game decode() {
+      return Fen.decode(fen);
+   }
+
+   @Benchmark
+   public String encode() {
+      return Fen.encode(posn);
+   }
+}
@@ -0,0 +1,68 @@
+package org.rjo.chess.bulldog.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.rjo.chess.bulldog.game.Position;
+import org.rjo.chess.bulldog.move.IMove;
+import org.rjo.chess.bulldog.move.MoveGenerator;
+import org.rjo.chess.bulldog.move.MoveList;
+import org.rjo.chess.bulldog.piece.Colour;
+
+/**
+ * Move generation for the positions of {@link BenchmarkPositions}, returning {@link IMove} objects and in {@link MoveList} (packed) format.
+ *
+ * @author rich
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveGenerationBenchmark {
+
+   @Param({ BenchmarkPositions.INITIAL, BenchmarkPositions.KIWIPETE, BenchmarkPositions.POSN3, BenchmarkPositions.POSN4,
+         BenchmarkPositions.POSN5, BenchmarkPositions.POSN6, BenchmarkPositions.PROMOTION })
+   public String position;
+
+   private Position posn;
+   private Colour sideToMove;
+   private MoveGenerator moveGenerator;
+   private MoveList moves;
+
+   @Setup
+   public void setup() {
+      posn = BenchmarkPositions.position(position);
+      sideToMove = posn.getSideToMove();
+      moveGenerator = new MoveGenerator();
+      moves = new MoveList();
+   }
+
+   @Benchmark
+   public List<IMove> findMoves() {
+      return moveGenerator.findMoves(posn, sideToMove);
+   }
+
+   @Benchmark
+   public MoveList findMovesPacked() {
+      moveGenerator.findMoves(posn, sideToMove, moves);
+      return moves;
+   }
+
+   @Benchmark
+   public int countLegalMoves() {
+      return moveGenerator.countLegalMoves(posn, sideToMove);
+   }
+}
@@ -0,0 +1,83 @@
+package org.rjo.chess.bulldog.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.rjo.chess.bulldog.game.Position;
+import org.rjo.chess.bulldog.game.Position.PieceSquareInfo;
+import org.rjo.chess.bulldog.move.MoveList;
+import org.rjo.chess.bulldog.piece.Colour;
+
+/**
+ * Operations on a {@link Position}: making all legal moves (copy-make with {@link Position#move(int)} and in-place with
+ * {@link Position#makeMove(int)}/{@link Position#unmakeMove()}), evaluation, and check detection.
+ *
+ * @author rich
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PositionBenchmark {
+
+   @Param({ BenchmarkPositions.INITIAL, BenchmarkPositions.KIWIPETE, BenchmarkPositions.POSN3, BenchmarkPositions.POSN4,
+         BenchmarkPositions.POSN5, BenchmarkPositions.POSN6, BenchmarkPositions.PROMOTION })
+   public String position;
+
+   private Position posn;
+   private Colour sideToMove;
+   private int kingsSquare;
+   /** the legal moves of 'posn' */
+   private MoveList moves;
+
+   @Setup
+   public void setup() {
+      posn = BenchmarkPositions.position(position);
+      sideToMove = posn.getSideToMove();
+      kingsSquare = posn.getKingsSquare(sideToMove);
+      moves = new MoveList();
+      posn.findMoves(sideToMove, moves);
+   }
+
+   /** creates a new position for each legal move */
+   @Benchmark
+   public void move(Blackhole bh) {
+      for (int i = 0; i < moves.size(); i++) {
+         bh.consume(posn.move(moves.get(i)));
+      }
+   }
+
+   /** makes and takes back each legal move */
+   @Benchmark
+   public void makeUnmakeMove(Blackhole bh) {
+      for (int i = 0; i < moves.size(); i++) {
+         posn.makeMove(moves.get(i));
+         bh.consume(posn.getZobristKey());
+         posn.unmakeMove();
+      }
+   }
+
+   @Benchmark
+   public int evaluate() {
+      return posn.evaluate();
+   }
+
+   @Benchmark
+   public List<PieceSquareInfo> isKingInCheck() {
+      return posn.isKingInCheck(kingsSquare, sideToMove);
+   }
+}
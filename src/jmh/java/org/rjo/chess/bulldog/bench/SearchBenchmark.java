@@ -0,0 +1,60 @@
+package org.rjo.chess.bulldog.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.rjo.chess.bulldog.eval.AlphaBeta3;
+import org.rjo.chess.bulldog.eval.MoveInfo;
+import org.rjo.chess.bulldog.eval.SearchLimits;
+import org.rjo.chess.bulldog.game.Position;
+
+/**
+ * A single-threaded {@link AlphaBeta3} search to a fixed depth. Each invocation starts with a new search object (and therefore an empty
+ * transposition table), so that the results do not depend on the previous invocations.
+ *
+ * @author rich
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SearchBenchmark {
+
+   /** small, since the table is allocated for every invocation */
+   private static final int HASH_SIZE_IN_MB = 16;
+
+   @Param({ BenchmarkPositions.INITIAL, BenchmarkPositions.KIWIPETE, BenchmarkPositions.POSN6 })
+   public String position;
+
+   @Param({ "4" })
+   public int depth;
+
+   private AlphaBeta3 search;
+   private Position posn;
+
+   @Setup(Level.Invocation)
+   public void setup() {
+      search = new AlphaBeta3(new PrintStream(OutputStream.nullOutputStream()), HASH_SIZE_IN_MB);
+      posn = BenchmarkPositions.position(position);
+   }
+
+   @Benchmark
+   public MoveInfo findMove() {
+      return search.findMove(posn, SearchLimits.ofDepth(depth));
+   }
+}
@@ -0,0 +1,82 @@
+package org.rjo.chess.bulldog.board;
+
+import org.rjo.chess.bulldog.piece.Colour;
+
+/**
+ * Attacks of the 'leaping' pieces (knight, king and pawn), which do not depend on the occupancy of the board. The counterpart of
+ * {@link MagicBitboards} for the sliding pieces.
+ * <p>
+ * The bitboards use the same mapping as {@link MagicBitboards}, i.e. bit 0 == square a8, bit 63 == square h1.
+ *
+ * @author rich
+ */
+public final class LeaperAttacks {
+
+   private static final long[] KNIGHT_ATTACKS = new long[64];
+   private static final long[] KING_ATTACKS = new long[64];
+   /** dim0: colour of the pawn; dim1: square of the pawn. Stores the squares attacked by the pawn */
+   private static final long[][] PAWN_ATTACKS = new long[2][64];
+
+   static {
+      int[][] knightOffsets = { { -2, -1 }, { -2, 1 }, { -1, -2 }, { -1, 2 }, { 1, -2 }, { 1, 2 }, { 2, -1 }, { 2, 1 } };
+      int[][] kingOffsets = { { -1, -1 }, { -1, 0 }, { -1, 1 }, { 0, -1 }, { 0, 1 }, { 1, -1 }, { 1, 0 }, { 1, 1 } };
+      // rank 0 is the 8th rank (square 0 == a8), therefore white pawns attack the squares on the rank 'above'
+      for (int sq = 0; sq < 64; sq++) {
+         int rank = sq >>> 3;
+         int file = sq & 7;
+         KNIGHT_ATTACKS[sq] = squaresAtOffsets(rank, file, knightOffsets);
+         KING_ATTACKS[sq] = squaresAtOffsets(rank, file, kingOffsets);
+         PAWN_ATTACKS[Colour.WHITE.ordinal()][sq] = squaresAtOffsets(rank, file, new int[][] { { -1, -1 }, { -1, 1 } });
+         PAWN_ATTACKS[Colour.BLACK.ordinal()][sq] = squaresAtOffsets(rank, file, new int[][] { { 1, -1 }, { 1, 1 } });
+      }
+   }
+
+   private LeaperAttacks() {
+      // cannot be instantiated
+   }
+
+   private static long squaresAtOffsets(int rank, int file, int[][] offsets) {
+      long squares = 0;
+      for (int[] offset : offsets) {
+         int r = rank + offset[0];
+         int f = file + offset[1];
+         if (r >= 0 && r < 8 && f >= 0 && f < 8) { squares |= 1L << (r * 8 + f); }
+      }
+      return squares;
+   }
+
+   /**
+    * @param sq square of the knight
+    * @return all squares attacked by a knight on 'sq'
+    */
+   public static long knightAttacks(int sq) {
+      return KNIGHT_ATTACKS[sq];
+   }
+
+   /**
+    * @param sq square of the king
+    * @return all squares attacked by a king on 'sq'
+    */
+   public static long kingAttacks(int sq) {
+      return KING_ATTACKS[sq];
+   }
+
+   /**
+    * The squares attacked by a pawn. Since pawn attacks are symmetrical, <code>pawnAttacks(colour.opposite(), sq)</code> returns the
+    * squares from which a pawn of 'colour' would attack 'sq'.
+    *
+    * @param colour ordinal of the colour of the pawn
+    * @param sq     square of the pawn
+    * @return the (at most two) squares attacked by a pawn on 'sq'
+    */
+   public static long pawnAttacks(int colour, int sq) {
+      return PAWN_ATTACKS[colour][sq];
+   }
+
+   /**
+    * As {@link #pawnAttacks(int, int)}.
+    */
+   public static long pawnAttacks(Colour colour, int sq) {
+      return PAWN_ATTACKS[colour.ordinal()][sq];
+   }
+}
@@ -0,0 +1,167 @@
+package org.rjo.chess.bulldog.board;
+
+/**
+ * Sliding piece attacks using 'magic bitboards'. Given a square and the occupancy of the board as a long, the complete set of squares
+ * attacked by a rook, bishop or queen is returned with one table lookup (per direction type).
+ * <p>
+ * The bitboards use the same mapping as {@link Ray#bitmaskBetweenSquares}, i.e. bit 0 == square a8, bit 63 == square h1.
+ * <p>
+ * The magic numbers are hard-coded, so that class initialisation only has to fill the attack tables. They were found with a random search
+ * using a fixed seed, see <code>MagicNumberGenerator</code> in the tests.
+ *
+ * @author rich
+ * @see "https://www.chessprogramming.org/Magic_Bitboards"
+ */
+public class MagicBitboards {
+
+   static final Ray[] ROOK_RAYS = { Ray.NORTH, Ray.EAST, Ray.SOUTH, Ray.WEST };
+   static final Ray[] BISHOP_RAYS = { Ray.NORTHEAST, Ray.SOUTHEAST, Ray.SOUTHWEST, Ray.NORTHWEST };
+
+   /** relevant occupancy squares for each square (the edge square of each ray is not relevant) */
+   private static final long[] ROOK_MASK = new long[64];
+   private static final long[] BISHOP_MASK = new long[64];
+   private static final long[] ROOK_MAGIC = {
+         0x0080008020400010L, 0x014020001000C000L, 0x0100090010402004L, 0x2080049002800800L,
+         0x0200100420020008L, 0x0200040801904200L, 0x2100210000820004L, 0x0200005820840201L,
+         0x0002800024804010L, 0x0410C01001402000L, 0x4A02001048820020L, 0x0102001020420008L,
+         0x1A06000420120008L, 0x0008800400020080L, 0x1287000900020024L, 0x8002000080710402L,
+         0x2022020020408104L, 0x8051010040008020L, 0x1001010020001042L, 0x20C0220010400A00L,
+         0x0E04008080080004L, 0x008C008002000480L, 0x3082440008100281L, 0x048002000081104CL,
+         0x828080208000401AL, 0x0800400080200080L, 0x0000100080200080L, 0x4210001100092300L,
+         0x0000080080040080L, 0x0214000480020080L, 0x014A280400420130L, 0x3000404200008401L,
+         0x042DC000E0800180L, 0x0000402001401000L, 0x0110804222001600L, 0x0000080084801002L,
+         0x8285820400800801L, 0x84020044120018B0L, 0x00000A080C003001L, 0x8280108902000064L,
+         0x0002800040018020L, 0x2000500020084001L, 0x00C6201082020040L, 0x00C0080010008080L,
+         0x000200A0100A0004L, 0x0505020004008080L, 0x4010020004010100L, 0x8040010060820014L,
+         0x110A410330820200L, 0x0043024000248900L, 0x4C00231A00408200L, 0x8000800800100080L,
+         0x5840510008000500L, 0x8004008004020080L, 0x03A0091002D80400L, 0x4220410C004A8E00L,
+         0x00020512A0810042L, 0x0408220100144082L, 0x4000200041040811L, 0x1110200408100101L,
+         0x0101000800020411L, 0x0425000400028801L, 0x3204110200A81004L, 0x00809040810C0022L
+   };
+   private static final long[] BISHOP_MAGIC = {
+         0x1040020082008500L, 0x0004111202120100L, 0x001010CA04401001L, 0x009A0A0200002890L,
+         0x0604042101020004L, 0x8282021005000200L, 0x08A0441024D00000L, 0x0401128804022008L,
+         0x1060110270042080L, 0x0C80040144010200L, 0x2080488210420000L, 0x0A00044040818842L,
+         0x0111020210402006L, 0x0805042404404085L, 0x00200406220A2204L, 0x4200509044022020L,
+         0x008800A002900202L, 0x1018001050450040L, 0x0408008106040110L, 0x0101008820420044L,
+         0x0224000822080480L, 0x0804200110101001L, 0x2000848108082226L, 0x200500020D008200L,
+         0x02A0040408100440L, 0x2208481804010820L, 0x0808140088004010L, 0x0148488008020140L,
+         0x0411010000104010L, 0x00900A1101010080L, 0x004502084A48440CL, 0xD101002001108808L,
+         0x08A2082114046001L, 0x0000C82001880230L, 0x0010443000480040L, 0x8100400808008200L,
+         0x0608020401001100L, 0x4010004190AA0200L, 0x0910011A02110080L, 0xC00084004703820AL,
+         0x4008041005000801L, 0x02484402286C2000L, 0x0000084648009004L, 0x0030008401027020L,
+         0x842C010202000420L, 0x1001104901C02200L, 0x06100102240010A0L, 0x0401010429060280L,
+         0x0100442420082000L, 0xC4C1424218208098L, 0x8002020201042222L, 0x2080010884042001L,
+         0x0400000810340022L, 0xC040404234410001L, 0x0006041012020080L, 0xA620010202104010L,
+         0x0002208044104100L, 0x0000402108021004L, 0x0020000180484800L, 0x082800050046080AL,
+         0x600140031002022CL, 0x70C201A020422080L, 0x00C00888480C8402L, 0x0050228C880600C2L
+   };
+   private static final int[] ROOK_SHIFT = new int[64];
+   private static final int[] BISHOP_SHIFT = new int[64];
+   /** dim0: square; dim1: attack set indexed by the 'magic' index */
+   private static final long[][] ROOK_ATTACKS = new long[64][];
+   private static final long[][] BISHOP_ATTACKS = new long[64][];
+
+   static {
+      for (int sq = 0; sq < 64; sq++) {
+         ROOK_MASK[sq] = relevantOccupancyMask(sq, ROOK_RAYS);
+         BISHOP_MASK[sq] = relevantOccupancyMask(sq, BISHOP_RAYS);
+         ROOK_SHIFT[sq] = 64 - Long.bitCount(ROOK_MASK[sq]);
+         BISHOP_SHIFT[sq] = 64 - Long.bitCount(BISHOP_MASK[sq]);
+         ROOK_ATTACKS[sq] = new long[1 << Long.bitCount(ROOK_MASK[sq])];
+         BISHOP_ATTACKS[sq] = new long[1 << Long.bitCount(BISHOP_MASK[sq])];
+         if (!fillAttacks(sq, ROOK_MASK[sq], ROOK_MAGIC[sq], ROOK_RAYS, ROOK_ATTACKS[sq])
+               || !fillAttacks(sq, BISHOP_MASK[sq], BISHOP_MAGIC[sq], BISHOP_RAYS, BISHOP_ATTACKS[sq])) {
+            throw new IllegalStateException("bad magic number for square " + sq);
+         }
+      }
+   }
+
+   private MagicBitboards() {
+      // cannot be instantiated
+   }
+
+   /**
+    * @param sq       square of the rook
+    * @param occupied all occupied squares (both colours)
+    * @return all squares attacked by a rook on 'sq'. Includes the first occupied square in each direction, regardless of colour.
+    */
+   public static long rookAttacks(int sq, long occupied) {
+      return ROOK_ATTACKS[sq][(int) (((occupied & ROOK_MASK[sq]) * ROOK_MAGIC[sq]) >>> ROOK_SHIFT[sq])];
+   }
+
+   /**
+    * @param sq       square of the bishop
+    * @param occupied all occupied squares (both colours)
+    * @return all squares attacked by a bishop on 'sq'. Includes the first occupied square in each direction, regardless of colour.
+    */
+   public static long bishopAttacks(int sq, long occupied) {
+      return BISHOP_ATTACKS[sq][(int) (((occupied & BISHOP_MASK[sq]) * BISHOP_MAGIC[sq]) >>> BISHOP_SHIFT[sq])];
+   }
+
+   /**
+    * @param sq       square of the queen
+    * @param occupied all occupied squares (both colours)
+    * @return all squares attacked by a queen on 'sq'
+    */
+   public static long queenAttacks(int sq, long occupied) {
+      return rookAttacks(sq, occupied) | bishopAttacks(sq, occupied);
+   }
+
+   /**
+    * Calculates the attacks by walking along the rays. Only used to set up the tables (and in tests).
+    *
+    * @param sq       start square
+    * @param occupied occupancy of the board
+    * @param rays     directions to process
+    * @return the attacked squares
+    */
+   /* package */ static long slowAttacks(int sq, long occupied, Ray[] rays) {
+      long attacks = 0;
+      for (Ray ray : rays) {
+         for (int raySq : Ray.raysList[sq][ray.ordinal()]) {
+            attacks |= 1L << raySq;
+            if ((occupied & (1L << raySq)) != 0) { break; }
+         }
+      }
+      return attacks;
+   }
+
+   /**
+    * The squares along the rays from 'sq', without the last square of each ray (a piece on the edge cannot block anything further).
+    */
+   /* package */ static long relevantOccupancyMask(int sq, Ray[] rays) {
+      long mask = 0;
+      for (Ray ray : rays) {
+         int[] raySquares = Ray.raysList[sq][ray.ordinal()];
+         for (int i = 0; i < raySquares.length - 1; i++) {
+            mask |= 1L << raySquares[i];
+         }
+      }
+      return mask;
+   }
+
+   /**
+    * Fills the 'attacks' table for the given square and magic number.
+    *
+    * @param attacks table to fill, size 2^(number of bits in mask). Must be empty (all zeros)
+    * @return false if the magic number does not work, i.e. two occupancies with different attack sets map onto the same index
+    */
+   /* package */ static boolean fillAttacks(int sq, long mask, long magic, Ray[] rays, long[] attacks) {
+      int shift = 64 - Long.bitCount(mask);
+      // enumerate all subsets of 'mask' (Carry-Rippler)
+      long subset = 0;
+      do {
+         long reference = slowAttacks(sq, subset, rays);
+         int index = (int) ((subset * magic) >>> shift);
+         // an attack set is never empty, so 0 marks an unused entry
+         if (attacks[index] == 0) {
+            attacks[index] = reference;
+         } else if (attacks[index] != reference) {
+            return false;
+         }
+         subset = (subset - mask) & mask;
+      } while (subset != 0);
+      return true;
+   }
+}
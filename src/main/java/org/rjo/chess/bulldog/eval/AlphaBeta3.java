@@ -3,404 +3,923 @@ package org.rjo.chess.bulldog.eval;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.rjo.chess.bulldog.game.Position;
-import org.rjo.chess.bulldog.move.IMove;
+import org.rjo.chess.bulldog.move.MoveList;
+import org.rjo.chess.bulldog.move.PackedMove;
 import org.rjo.chess.bulldog.piece.Colour;
 
 public class AlphaBeta3 implements SearchStrategy {
 	private static final Logger LOG = LogManager.getLogger(AlphaBeta3.class);
 
-	private static final int MIN_VAL = -99999;
-	private static final int MAX_VAL = -MIN_VAL;
-
 	private static boolean USE_ZOBRIST = true;
+	private static boolean USE_QUIESCENCE_SEARCH = true;
+
+	// move ordering scores
+	private static final int PV_MOVE_SCORE = Integer.MAX_VALUE;
+	private static final int HASH_MOVE_SCORE = PV_MOVE_SCORE - 1;
+	// (captures and promotions: see SearchSupport.scoreCapture)
+	private static final int KILLER_1_SCORE = SearchSupport.CAPTURE_SCORE - 1;
+	private static final int KILLER_2_SCORE = SearchSupport.CAPTURE_SCORE - 2;
+	private static final int COUNTER_MOVE_SCORE = SearchSupport.CAPTURE_SCORE - 3;
+	// history scores are kept within [-HISTORY_MAX, HISTORY_MAX]
+	private static final int HISTORY_MAX = 16384;
+
+	// delta pruning: a capture is not searched if the value of the captured piece
+	// plus this margin would not bring the score back within the alpha/beta window
+	private static final int DELTA_MARGIN = 200;
+
+	// aspiration windows: from this depth onwards, the root is searched with a window of
+	// +/- ASPIRATION_WINDOW around the previous iteration's score. The window is doubled
+	// on every fail high/low, and replaced by the full window once it exceeds ASPIRATION_MAX_WINDOW
+	private static final int ASPIRATION_MIN_DEPTH = 4;
+	private static final int ASPIRATION_WINDOW = 25;
+	private static final int ASPIRATION_MAX_WINDOW = 800;
+
+	// null-move pruning: only tried if at least this much depth remains. The
+	// null move is searched with the depth reduced by an extra R plies (R=3 for deeper searches)
+	private static final int NULL_MOVE_MIN_DEPTH = 3;
+	private static final int NULL_MOVE_DEEP_REDUCTION_DEPTH = 7;
+	// from this depth onwards, a null-move cut-off is verified by a reduced search without null moves (zugzwang)
+	private static final int NULL_MOVE_VERIFICATION_DEPTH = 8;
+
+	// futility pruning: at depth 1-2, quiet moves are not searched if the static evaluation
+	// plus FUTILITY_MARGIN[depth] does not reach alpha
+	private static final int[] FUTILITY_MARGIN = { 0, 200, 350 };
+	// razoring: at depth 1-3, if the static evaluation plus RAZOR_MARGIN[depth] is below alpha,
+	// the quiescence search decides whether the node needs to be searched
+	private static final int[] RAZOR_MARGIN = { 0, 300, 450, 600 };
+
+	// internal iterative deepening: in PV nodes without a hash or PV move, and at least this
+	// much depth remaining, a search with depth reduced by IID_REDUCTION finds a move to search first
+	private static final int IID_MIN_DEPTH = 4;
+	private static final int IID_REDUCTION = 2;
+
+	// late move reductions: quiet moves after the first LMR_MIN_MOVE_NUMBER moves are searched
+	// with reduced depth, if at least LMR_MIN_DEPTH plies remain. See LMR_REDUCTIONS
+	private static final int LMR_MIN_DEPTH = 3;
+	private static final int LMR_MIN_MOVE_NUMBER = 3;
+	// late move pruning: at depth <= LMP_MAX_DEPTH, quiet moves after the first LMP_MOVE_COUNT[depth] moves are not searched
+	private static final int LMP_MAX_DEPTH = 3;
+	private static final int[] LMP_MOVE_COUNT = { 0, 6, 10, 16 };
+	// LMR reduction in plies, indexed by depth and move number: ln(depth) * ln(moveNumber) / 2.25
+	private static final int[][] LMR_REDUCTIONS = new int[SearchSupport.MAX_DEPTH + 1][64];
+
+	static {
+		for (int depth = 1; depth <= SearchSupport.MAX_DEPTH; depth++) {
+			for (int moveNbr = 1; moveNbr < 64; moveNbr++) {
+				LMR_REDUCTIONS[depth][moveNbr] = (int) (0.75 + Math.log(depth) * Math.log(moveNbr) / 2.25);
+			}
+		}
+	}
 
-	private static int count = 0;
-
+	// depth of the search if no other limits are given
 	private int startDepth = 4;
+	// depth of the current iteration
+	private int rootDepth;
+
+	private SearchClock clock;
+	// set if the clock ran out during an iteration. The results of this iteration are discarded
+	private boolean stopped;
+	// principal variation of the previous iteration, used for move ordering
+	private Line previousPv;
 
 	private PrintStream outputStream;
 
-	// private ZobristMap zobristMap;
+	// triangular PV table: row 'ply' contains the best line found from the node at this ply (starting at index 'ply')
+	private int[][] pvTable;
+	// pvLength[ply] is the index after the last move of the line in pvTable[ply]
+	private int[] pvLength;
+	// the moves leading from the root to the current node. NO_MOVE for a null move
+	private int[] currentLine;
+	// set during a null-move verification search
+	private boolean nullMoveDisabled;
+
+	// one move list per depth, to avoid allocations during the search
+	private MoveList[] moveLists;
+	private final MoveList[] quiescenceMoveLists = new MoveList[SearchSupport.MAX_QUIESCENCE_DEPTH + 1];
+	// scores of the moves for move ordering, one array per depth (same as the move lists)
+	private int[][] moveScores;
+	private final int[][] quiescenceMoveScores = new int[SearchSupport.MAX_QUIESCENCE_DEPTH + 1][MoveList.DEFAULT_CAPACITY];
+
+	// quiet-move ordering heuristics.
+	// killer moves: two quiet moves per ply which caused a cut-off
+	private final int[][] killerMoves = new int[SearchSupport.MAX_DEPTH + SearchSupport.MAX_QUIESCENCE_DEPTH + 1][2];
+	// history heuristic ("butterfly" table): dim0: colour, dim1: from square, dim2: to square
+	private final int[][][] history = new int[2][64][64];
+	// counter moves: the quiet move which refuted the previous move, indexed by from/to of the previous move
+	private final int[][] counterMoves = new int[64][64];
+	// for capture ordering. Not thread-safe, therefore one per search thread
+	private final StaticExchangeEvaluator staticExchangeEvaluator = new StaticExchangeEvaluator();
+
+	private final int hashSizeInMB;
+	// allocated on first use. Shared with the helper threads
+	private TranspositionTable transpositionTable;
+	// how many times the search was cut short by an entry in the transposition table
+	private int nbrHashCutoffs;
 
 	// how many times moves were made, i.e. new positions created
-	private static int NBR_NODES_SEARCHED;
+	private int nbrNodesSearched;
 	// how many times 'evaluate' was called
-	private static int NBR_POSNS_EVALUATED;
+	private int nbrPosnsEvaluated;
+
+	// Lazy SMP: total number of search threads, including this one
+	private final int nbrThreads;
+	// the helper searches, each run in its own thread. Empty if nbrThreads == 1
+	private final AlphaBeta3[] helpers;
+	// 0 for the main search, otherwise the number of the helper
+	private final int helperId;
 
 	public AlphaBeta3(PrintStream out) {
+		this(out, TranspositionTable.DEFAULT_SIZE_IN_MB);
+	}
+
+	/**
+	 * @param out          stream for UCI output
+	 * @param hashSizeInMB size of the transposition table in MB
+	 */
+	public AlphaBeta3(PrintStream out, int hashSizeInMB) {
+		this(out, hashSizeInMB, 1);
+	}
+
+	/**
+	 * @param out          stream for UCI output
+	 * @param hashSizeInMB size of the transposition table in MB
+	 * @param nbrThreads   number of threads to search with (Lazy SMP). 1 for a
+	 *                     single-threaded search
+	 */
+	public AlphaBeta3(PrintStream out, int hashSizeInMB, int nbrThreads) {
+		this(out, hashSizeInMB, nbrThreads, 0);
+	}
+
+	private AlphaBeta3(PrintStream out, int hashSizeInMB, int nbrThreads, int helperId) {
+		if (nbrThreads < 1) {
+			throw new IllegalArgumentException("invalid number of threads " + nbrThreads + ", must be >= 1");
+		}
 		this.outputStream = out;
+		this.hashSizeInMB = hashSizeInMB;
+		this.nbrThreads = nbrThreads;
+		this.helperId = helperId;
+		for (int i = 0; i < quiescenceMoveLists.length; i++) {
+			quiescenceMoveLists[i] = new MoveList();
+		}
+		this.helpers = new AlphaBeta3[nbrThreads - 1];
+		for (int i = 0; i < helpers.length; i++) {
+			helpers[i] = new AlphaBeta3(null, hashSizeInMB, 1, i + 1);
+		}
 	}
 
 	@Override
 	public MoveInfo findMove(Position posn) {
-		NBR_NODES_SEARCHED = 0;
-		NBR_POSNS_EVALUATED = 0;
-		MoveTree moveTree = new MoveTree(null, null, startDepth, 0, 0);
-		// if white currently to move, want to maximize. Otherwise minimize.
-		MiniMax type = posn.getSideToMove() == Colour.WHITE ? MiniMax.MAX : MiniMax.MIN;
-
-		long start = System.currentTimeMillis();
-		SearchResult result = alphabeta(posn, startDepth, MIN_VAL, MAX_VAL, type, new Line(), moveTree);
-		long duration = System.currentTimeMillis() - start;
-		LOG.debug(moveTree.toString());
-		LOG.info("evaluated {} nodes, {} posns, time: {}, result: {}", NBR_NODES_SEARCHED, NBR_POSNS_EVALUATED,
-				timeTaken(duration), result);
+		return findMove(posn, SearchLimits.ofDepth(startDepth));
+	}
+
+	/**
+	 * Iterative deepening: searches to depth 1, 2, ... until the depth limit is
+	 * reached or the clock runs out. The best move of the last completed iteration
+	 * is returned.
+	 * <p>
+	 * If more than one thread is configured (Lazy SMP), helper threads search the
+	 * same position at the same time, sharing the transposition table. Their
+	 * results are only used via the table; the helpers are stopped as soon as the
+	 * main search has finished. A node limit applies to the main search only.
+	 */
+	@Override
+	public MoveInfo findMove(Position posn, SearchLimits limits) {
+		if (USE_ZOBRIST) {
+			if (transpositionTable == null) {
+				transpositionTable = new TranspositionTable(hashSizeInMB);
+			}
+			transpositionTable.newSearch();
+		}
+		int maxDepth;
+		if (limits.getDepth() > 0) {
+			maxDepth = Math.min(limits.getDepth(), SearchSupport.MAX_DEPTH);
+		} else {
+			maxDepth = limits.isInfinite() || limits.isTimeOrNodeLimited() ? SearchSupport.MAX_DEPTH : startDepth;
+		}
+		clock = new SearchClock(limits, posn.getSideToMove());
+		List<Thread> helperThreads = startHelpers(posn);
+		int score;
+		try {
+			score = iterativeDeepening(posn, 1, maxDepth);
+		} finally {
+			stopHelpers(helperThreads);
+		}
+		LOG.info("evaluated {} nodes ({} threads), {} posns, {} hash cutoffs, time: {}, depth: {}, score: {}, pv: {}",
+				getCurrentNbrNodesSearched(), nbrThreads, nbrPosnsEvaluated, nbrHashCutoffs,
+				timeTaken(clock.getElapsedTime()), previousPv.size(), score, previousPv);
 		MoveInfo moveInfo = new MoveInfo();
-		moveInfo.setMove(result.getLine().get().getMoves().pop());
-		moveInfo.setLine(result.getLine().get());
+		Line line = new Line(previousPv);
+		moveInfo.setMove(line.removeFirstMove());
+		moveInfo.setLine(line);
 		return moveInfo;
 	}
 
-	private void logDebug(String logLine, MiniMax evaluationType, int depth, Object... args) {
+	/**
+	 * Starts the helper threads. Each helper searches a copy of the position
+	 * until stopped. Every second helper starts one ply deeper than the main
+	 * search, so that the threads are not all searching the same tree at the same
+	 * time.
+	 */
+	private List<Thread> startHelpers(Position posn) {
+		List<Thread> threads = new ArrayList<>(helpers.length);
+		for (AlphaBeta3 helper : helpers) {
+			helper.transpositionTable = transpositionTable;
+			SearchLimits helperLimits = new SearchLimits();
+			helperLimits.setInfinite(true);
+			helper.clock = new SearchClock(helperLimits, posn.getSideToMove());
+			Thread thread = new Thread(() -> helper.iterativeDeepening(posn, 1 + helper.helperId % 2, SearchSupport.MAX_DEPTH),
+					"search-helper-" + helper.helperId);
+			thread.setDaemon(true);
+			thread.start();
+			threads.add(thread);
+		}
+		return threads;
+	}
+
+	private void stopHelpers(List<Thread> threads) {
+		for (AlphaBeta3 helper : helpers) {
+			helper.stop();
+		}
+		for (Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Runs the iterative deepening loop, using the clock which has already been
+	 * set up. Only the main search prints information about each iteration.
+	 *
+	 * @param posn       the position to search (is not changed)
+	 * @param firstDepth depth of the first iteration
+	 * @param maxDepth   depth of the last iteration
+	 * @return the score of the last completed iteration
+	 */
+	private int iterativeDeepening(Position posn, int firstDepth, int maxDepth) {
+		nbrNodesSearched = 0;
+		nbrPosnsEvaluated = 0;
+		nbrHashCutoffs = 0;
+		prepareMoveOrderingHeuristics();
+		stopped = false;
+		nullMoveDisabled = false;
+		previousPv = null;
+		pvTable = new int[maxDepth + 1][maxDepth + 1];
+		pvLength = new int[maxDepth + 1];
+		currentLine = new int[maxDepth + 1];
+		moveLists = new MoveList[maxDepth + 1];
+		for (int i = 0; i < moveLists.length; i++) {
+			moveLists[i] = new MoveList();
+		}
+		moveScores = new int[maxDepth + 1][MoveList.DEFAULT_CAPACITY];
+
+		// moves are made/unmade during the search, therefore work on a copy
+		Position searchPosn = new Position(posn, null);
+		int score = 0;
+		for (int depth = firstDepth; depth <= maxDepth; depth++) {
+			rootDepth = depth;
+			int iterationScore = aspirationSearch(searchPosn, depth, score);
+			if (stopped) {
+				break;
+			}
+			score = iterationScore;
+			previousPv = new Line();
+			for (int i = 0; i < pvLength[0]; i++) {
+				previousPv.addMove(pvTable[0][i], depth);
+			}
+			if (helperId == 0) {
+				printIterationInfo(depth, score);
+			}
+			// a forced mate has been found, searching deeper won't find anything better
+			// (unless searching 'infinitely', then keep going until stopped)
+			if ((Math.abs(score) >= SearchSupport.MATE_THRESHOLD && !clock.isInfinite()) || !clock.canStartIteration()) {
+				break;
+			}
+		}
+		return score;
+	}
+
+	@Override
+	public void stop() {
+		if (clock != null) {
+			clock.stop();
+		}
+	}
+
+	private void printIterationInfo(int depth, int score) {
+		outputStream.println(SearchSupport.iterationInfo(depth, score, getCurrentNbrNodesSearched(), clock.getElapsedTime(),
+				pvTable[0], pvLength[0]));
+	}
+
+	/**
+	 * Searches the root position with a narrow window around the score of the
+	 * previous iteration. If the score falls outside the window, the window is
+	 * widened on that side and the position is searched again.
+	 *
+	 * @param posn          the root position
+	 * @param depth         depth of this iteration
+	 * @param previousScore score of the previous iteration
+	 * @return the score of the root position
+	 */
+	private int aspirationSearch(Position posn, int depth, int previousScore) {
+		if (depth < ASPIRATION_MIN_DEPTH || Math.abs(previousScore) >= SearchSupport.MATE_THRESHOLD) {
+			return alphabeta(posn, depth, SearchSupport.MIN_VAL, SearchSupport.MAX_VAL, 0);
+		}
+		int window = ASPIRATION_WINDOW;
+		int alpha = previousScore - window;
+		int beta = previousScore + window;
+		while (true) {
+			int score = alphabeta(posn, depth, alpha, beta, 0);
+			if (stopped || (score > alpha && score < beta)) {
+				return score;
+			}
+			window *= 2;
+			if (window > ASPIRATION_MAX_WINDOW) {
+				alpha = SearchSupport.MIN_VAL;
+				beta = SearchSupport.MAX_VAL;
+			} else if (score <= alpha) {
+				alpha = Math.max(score - window, SearchSupport.MIN_VAL);
+			} else {
+				beta = Math.min(score + window, SearchSupport.MAX_VAL);
+			}
+			logDebug("aspiration window failed, score {}, new window [{}, {}]", 0, score, alpha, beta);
+		}
+	}
+
+	private void logDebug(String logLine, int ply, Object... args) {
 		if (LOG.isDebugEnabled()) {
-			var indent = "                               ".substring(0, 9 - depth);
+			var indent = "                                ".substring(0, Math.min(ply, 32));
 			List<Object> paramList = new ArrayList<>();
 			paramList.add(indent);
-			paramList.add(evaluationType);
-			paramList.add(depth);
+			paramList.add(ply);
 			paramList.addAll(Arrays.asList(args));
-			LOG.debug("{}{} depth {}: " + logLine, paramList.toArray());
+			LOG.debug("{}ply {}: " + logLine, paramList.toArray());
 		}
 	}
 
 	/**
-	 * the minimax value of n, searched to depth d. If the value is less than alpha,
-	 * returns alpha. If greater than beta, returns beta.
+	 * Fail-soft negamax alpha-beta search. The score is always from the point of
+	 * view of the side to move, so the score of a child node is the negated score
+	 * returned by the recursive call with the window (-beta, -alpha).
+	 * <p>
+	 * Principal variation search: only the first (best ordered) move is searched
+	 * with the full window. The remaining moves are searched with a null window,
+	 * which just proves that they are not better than alpha; if this fails, the
+	 * move is searched again with the full window.
+	 * <p>
+	 * Late quiet moves are searched with reduced depth (LMR), and searched again
+	 * to full depth if they beat alpha. Near the leaves, late quiet moves are not
+	 * searched at all (late move pruning), nor are quiet moves if the static
+	 * evaluation is too far below alpha (futility pruning). Nodes whose static
+	 * evaluation is very low are dropped into the quiescence search (razoring).
+	 * <p>
+	 * The principal variation is collected in the triangular array
+	 * {@link #pvTable}: row 'ply' holds the best line found from this node. It is
+	 * only updated when a move raises alpha, so no objects are allocated during the
+	 * search.
 	 *
-	 * @param posn           current game position
-	 * @param depth          current depth
-	 * @param alpha          current min ("alpha")
-	 * @param beta           current max ("beta")
-	 * @param evaluationType whether max or min
-	 * @param line           current line
-	 * @param moveTree
-	 * @return best result
+	 * @param posn  current game position
+	 * @param depth remaining depth
+	 * @param alpha lower bound of the window
+	 * @param beta  upper bound of the window
+	 * @param ply   distance from the root
+	 * @return score of the position. If &lt;= alpha this is an upper bound, if
+	 *         &gt;= beta a lower bound
 	 */
-	private SearchResult alphabeta(Position posn, int depth, int alpha, int beta, MiniMax evaluationType, Line line,
-			MoveTree moveTree) {
-		if (depth == 0) {
-			NBR_POSNS_EVALUATED++;
-			int score = posn.evaluate();
-			logDebug("evaluating posn currentLine: {}, score {}", evaluationType, depth, line, score);
-			return new SearchResult(score, startDepth, line);
+	private int alphabeta(Position posn, int depth, int alpha, int beta, int ply) {
+		pvLength[ply] = ply;
+		if (rootDepth > 1 && clock.isTimeUp(nbrNodesSearched)) {
+			stopped = true;
+			return 0;
 		}
-
-		Line currentBestLine = null;
-		long startTime = System.currentTimeMillis();
-		List<IMove> moves = orderMoves(posn, posn.findMoves(posn.getSideToMove()));
-		int nbrMoves = moves.size();
-		logDebug("currentLine: {}, alpha {}, beta {}, found {} moves in {}, moves: {}", evaluationType, depth, line,
-				alpha, beta, nbrMoves, timeTaken(System.currentTimeMillis() - startTime), moves);
-		int moveNbr = 0;
-		int value;
-		switch (evaluationType) {
-		case MAX: // maximising player
-			value = MIN_VAL;
-			for (IMove move : moves) {
-				moveNbr++;
-				MoveTree moveEntry = new MoveTree(MiniMax.MAX, move, depth, alpha, beta);
-				moveTree.addEntry(moveEntry);
-				Position newPosn = posn.move(move);
-				line.addMove(move, startDepth);
-				NBR_NODES_SEARCHED++;
-				logDebug("move {}/{}: {}, currentLine: {}, alpha {}, beta {}", evaluationType, depth, moveNbr, nbrMoves,
-						move, line, alpha, beta);
-				SearchResult result = alphabeta(newPosn, depth - 1, alpha, beta, MiniMax.MIN, line, moveEntry);
-				moveEntry.setScore(result.getScore());
-				value = Math.max(value, result.getScore());
-				if (value > beta) {
-					logDebug("beta cut-off, value {}, beta {}", evaluationType, depth, value, beta);
-					moveEntry.addEvaluation(EvalType.BETA_CUTOFF);
-					line.removeLastMove();
-					break; /* beta cut-off */
-				}
-				if (result.getScore() > alpha) { // alpha = max (alpha, value)
-					alpha = result.getScore();
-					moveEntry.addEvaluation(EvalType.BESTSOFAR);
-					if (result.getLine().isPresent()) {
-						currentBestLine = new Line(result.getLine().get());
-						if (depth == startDepth) {
-							result.printUCI(outputStream);
-						}
+		final int origAlpha = alpha;
+		int hashMove = PackedMove.NO_MOVE;
+		if (USE_ZOBRIST) {
+			long entry = transpositionTable.probe(posn.getZobristKey());
+			if (entry != TranspositionTable.NOT_FOUND) {
+				hashMove = TranspositionTable.getMove(entry);
+				// no cut-off at the root, since we need a move
+				if (ply != 0 && TranspositionTable.getDepth(entry) >= depth) {
+					int score = TranspositionTable.getScore(entry);
+					int bound = TranspositionTable.getBound(entry);
+					if (bound == TranspositionTable.EXACT || (bound == TranspositionTable.LOWER_BOUND && score >= beta)
+							|| (bound == TranspositionTable.UPPER_BOUND && score <= alpha)) {
+						nbrHashCutoffs++;
+						logDebug("hash cut-off, score {}", ply, score);
+						return score;
 					}
-					logDebug("saved new best line: {}, alpha {}, beta {}", evaluationType, depth, currentBestLine,
-							alpha, beta);
 				}
-				line.removeLastMove();
 			}
-			// TODO replace this bit with posn.evaluate?
-			if (moves.isEmpty()) {
+		}
 
-				if (posn.isKingInCheck()) {
-					logDebug("mate found, currentLine: {}", evaluationType, depth, line);
-					// favour a mate in 5 rather than mate in 3
-					return new SearchResult(MIN_VAL + (10 - depth), line, line.getMoves().size(), startDepth);// need to
-																												// remain
-																												// above
-																												// MIN_VAL
-																												// (??)
-				} else {
-					// statemate: evaluate as 0
-					return new SearchResult(0, startDepth, line);
+		if (depth == 0) {
+			int score;
+			if (USE_QUIESCENCE_SEARCH) {
+				score = quiesce(posn, alpha, beta, 0, ply);
+				if (stopped) {
+					return 0;
 				}
+			} else {
+				score = evaluate(posn);
 			}
-			// is possible to get here without having set 'currentBestLine'
-			// e.g. have tried all possibilities but they were all outside of the
-			// [alpha,beta] range
-			return new SearchResult(value, startDepth, currentBestLine);
-
-		case MIN: // minimising player
-			value = MAX_VAL;
-			for (IMove move : moves) {
-				moveNbr++;
-				MoveTree moveEntry = new MoveTree(MiniMax.MIN, move, depth, alpha, beta);
-				moveTree.addEntry(moveEntry);
-				Position newPosn = posn.move(move);
-				line.addMove(move, startDepth);
-				NBR_NODES_SEARCHED++;
-				logDebug("move {}/{}: {}, currentLine: {}, min {}, max {}", evaluationType, depth, moveNbr, nbrMoves,
-						move, line, alpha, beta);
-				SearchResult result = alphabeta(newPosn, depth - 1, alpha, beta, MiniMax.MAX, line, moveEntry);
-				moveEntry.setScore(result.getScore());
-				value = Math.min(value, result.getScore());
-				if (value < alpha) {
-					logDebug("alpha cut-off, value {}, alpha {}", evaluationType, depth, value, alpha);
-					moveEntry.addEvaluation(EvalType.ALPHA_CUTOFF);
-					line.removeLastMove();
-					break; /* alpha cut-off */
+			logDebug("evaluated posn, score {}", ply, score);
+			storeInTranspositionTable(posn, PackedMove.NO_MOVE, score, depth, origAlpha, beta);
+			return score;
+		}
+
+		final boolean inCheck = posn.isKingInCheck();
+		MoveList moves = moveLists[depth];
+		posn.findMoves(posn.getSideToMove(), moves);
+		int nbrMoves = moves.size();
+		if (nbrMoves == 0) {
+			// checkmate or stalemate. Favour a mate in 3 rather than a mate in 5
+			return inCheck ? SearchSupport.MIN_VAL + 1 + ply : 0;
+		}
+
+		final boolean pvNode = beta - alpha > 1;
+		// the static evaluation is only needed for pruning decisions in non-PV nodes
+		final int staticEval = pvNode || inCheck ? SearchSupport.MIN_VAL : evaluate(posn);
+
+		// razoring: if the static evaluation is far below alpha, only captures are
+		// likely to help. If the quiescence search confirms this, the node is pruned.
+		// Since the quiescence search does not look at checks, not done if a check is possible
+		if (!pvNode && !inCheck && depth < RAZOR_MARGIN.length && Math.abs(alpha) < SearchSupport.MATE_THRESHOLD
+				&& staticEval + RAZOR_MARGIN[depth] < alpha && !containsCheck(moves)) {
+			int score = quiesce(posn, alpha, alpha + 1, 0, ply);
+			if (stopped) {
+				return 0;
+			}
+			if (depth == 1 || score <= alpha) {
+				return score;
+			}
+		}
+
+		if (nullMoveAllowed(posn, depth, beta, ply, staticEval)) {
+			int nullScore = nullMoveSearch(posn, depth, beta, ply);
+			if (stopped) {
+				return 0;
+			}
+			if (nullScore >= beta) {
+				return nullScore;
+			}
+		}
+
+		final int pvMove = pvMove(ply);
+		if (pvNode && depth >= IID_MIN_DEPTH && hashMove == PackedMove.NO_MOVE && pvMove == PackedMove.NO_MOVE) {
+			hashMove = internalIterativeDeepening(posn, depth, alpha, beta, ply);
+			if (stopped) {
+				return 0;
+			}
+		}
+
+		final int previousMove = ply == 0 ? PackedMove.NO_MOVE : currentLine[ply - 1];
+		int[] scores = moveScores[depth];
+		orderMoves(posn, moves, scores, hashMove, pvMove, ply, previousMove);
+		logDebug("alpha {}, beta {}, found {} moves: {}", ply, alpha, beta, nbrMoves, moves);
+		// futility pruning: quiet moves cannot raise the score to alpha
+		final boolean futile = !pvNode && !inCheck && depth < FUTILITY_MARGIN.length
+				&& Math.abs(alpha) < SearchSupport.MATE_THRESHOLD && staticEval + FUTILITY_MARGIN[depth] <= alpha;
+		int bestScore = SearchSupport.MIN_VAL;
+		int bestMove = PackedMove.NO_MOVE;
+		for (int i = 0; i < nbrMoves; i++) {
+			SearchSupport.pickNextMove(moves, scores, i);
+			int move = moves.get(i);
+			// a quiet move which is not a check, killer or counter move
+			boolean lateQuietMove = i > 0 && !inCheck && scores[i] < COUNTER_MOVE_SCORE && !PackedMove.isCheck(move);
+			if (lateQuietMove && !pvNode && depth <= LMP_MAX_DEPTH && i >= LMP_MOVE_COUNT[depth]
+					&& bestScore > -SearchSupport.MATE_THRESHOLD) {
+				continue;
+			}
+			if (futile && i > 0 && !PackedMove.isCapture(move) && !PackedMove.isPromotion(move)
+					&& !PackedMove.isCheck(move) && bestScore > -SearchSupport.MATE_THRESHOLD) {
+				continue;
+			}
+			posn.makeMove(move);
+			currentLine[ply] = move;
+			nbrNodesSearched++;
+			logDebug("move {}/{}: {}, alpha {}, beta {}", ply, i + 1, nbrMoves, PackedMove.toString(move), alpha, beta);
+			int score;
+			if (i == 0) {
+				score = -alphabeta(posn, depth - 1, -beta, -alpha, ply + 1);
+			} else {
+				int reduction = 0;
+				if (lateQuietMove && depth >= LMR_MIN_DEPTH && i >= LMR_MIN_MOVE_NUMBER) {
+					reduction = LMR_REDUCTIONS[depth][Math.min(i, 63)] - (pvNode ? 1 : 0);
+					reduction = Math.max(0, Math.min(reduction, depth - 2));
 				}
-				if (value < beta) { // beta = min(beta, value)
-					beta = value;
-					moveEntry.addEvaluation(EvalType.BESTSOFAR);
-					if (result.getLine().isPresent()) {
-						currentBestLine = new Line(result.getLine().get());
-						if (depth == startDepth) {
-							result.printUCI(outputStream);
-						}
-					}
-					logDebug("saved new best line: {}, alpha {}, beta {}", evaluationType, depth, currentBestLine,
-							alpha, beta);
+				score = -alphabeta(posn, depth - 1 - reduction, -alpha - 1, -alpha, ply + 1);
+				if (reduction > 0 && score > alpha && !stopped) {
+					score = -alphabeta(posn, depth - 1, -alpha - 1, -alpha, ply + 1);
+				}
+				if (score > alpha && score < beta && !stopped) {
+					score = -alphabeta(posn, depth - 1, -beta, -alpha, ply + 1);
 				}
-				line.removeLastMove();
 			}
-			// TODO replace this bit with posn.evaluate?
-			if (moves.isEmpty()) {
-				// test for checkmate or stalemate
-				if (posn.isKingInCheck()) {
-					logDebug("mate found, currentLine: {}", evaluationType, depth, line);
-					// return a higher score for a mate in 3 compared to a mate in 5
-					return new SearchResult(MAX_VAL - (10 - depth), line, line.getMoves().size(), startDepth); // need
-																												// to
-																												// remain
-																												// below
-																												// MAX_VAL
-				} else {
-					// statemate: evaluate as 0
-					return new SearchResult(0, startDepth, line);
+			posn.unmakeMove();
+			if (stopped) {
+				return 0;
+			}
+			if (score > bestScore) {
+				bestScore = score;
+				bestMove = move;
+				if (score > alpha) {
+					alpha = score;
+					updatePv(ply, move);
+					if (score >= beta) {
+						logDebug("beta cut-off, score {}, beta {}", ply, score, beta);
+						updateQuietMoveHeuristics(posn, moves, i, depth, ply, previousMove);
+						break;
+					}
 				}
 			}
-			// is possible to get here without having set 'currentBestLine'
-			// e.g. have tried all possibilities but they were all outside of the
-			// [alpha,beta] range
-			return new SearchResult(value, startDepth, currentBestLine);
-		default:
-			throw new RuntimeException("unexpected value for MIN/MAX ?");
 		}
+		storeInTranspositionTable(posn, bestMove, bestScore, depth, origAlpha, beta);
+		return bestScore;
 	}
 
 	/**
-	 * Sorts the given move lists according to various heuristics.
+	 * Internal iterative deepening: searches this node with reduced depth, to find
+	 * a good move to search first.
 	 *
-	 * @param posn  the current position
-	 * @param moves all available moves
-	 * @return a sorted list of available moves (hopefully, better moves first)
+	 * @return the best move found by the reduced search, or NO_MOVE
 	 */
-	private List<IMove> orderMoves(Position posn, List<IMove> moves) {
-
-		List<IMove> captures = new ArrayList<>(moves.size());
-		List<IMove> nonCaptures = new ArrayList<>(moves.size());
-		for (IMove move : moves) {
-			if (move.isCapture()) {
-				captures.add(move);
-			} else {
-				nonCaptures.add(move);
-			}
-		}
-		captures = orderCaptures(posn, captures);
-		nonCaptures = orderNonCaptures(posn, nonCaptures);
-
-		// ... and return
-		captures.addAll(nonCaptures);
-		return captures;
-	}
-
-	// for captures: Most Valuable Victim - Least Valuable Aggressor or Static
-	// Exchange Evaluation (SEE)
-	// http://chessprogramming.wikispaces.com/MVV-LVA
-	private List<IMove> orderCaptures(Position posn, List<IMove> moves) {
-		return moves;
-	}
-
-	// for non-captures: history heuristic
-	private List<IMove> orderNonCaptures(Position posn, List<IMove> moves) {
-		return moves;
-	}
-
-	// /*
-	// * if 'max' has found a move with evaluation +5, then a further move which
-	// evaluates to +3 can be immediately discarded.
-	// */
-	// public SearchResult alphaBetaMax(Position posn,
-	// Line line,
-	// int alpha,
-	// int beta,
-	// int depthleft) {
-	// LOG.debug("in alphaBetaMax, line {}, alpha {}, beta {}, depth {}", line,
-	// alpha, beta, depthleft);
-	// if (depthleft == 0) {
-	// int eval = posn.evaluate();
-	// NBR_POSNS_EVALUATED++;
-	// LOG.debug("evaluated posn: {}, posn\n{}", eval, posn);
-	// return new SearchResult(eval, line);
-	// }
-	// List<Move> moves = posn.findMoves(posn.getSideToMove());
-	// Line currentBestLine = null;
-	// int currentBestScore = MIN_VAL;
-	// for (Move move : moves) {
-	// LOG.debug("(max) alpha {}, beta {}, depth {}, move {}", alpha, beta,
-	// depthleft, move);
-	// Position newPosn = posn.move(move);
-	// line.addMove(move);
-	// SearchResult result = alphaBetaMin(newPosn, line, alpha, beta, depthleft -
-	// 1);
-	// if (result.getScore() > currentBestScore) {
-	// currentBestScore = result.getScore();
-	// if (currentBestScore >= beta) {
-	// LOG.debug("depth {}, move {}: beta cutoff {}, {} for posn\n{}", depthleft,
-	// move, result, beta, newPosn);
-	// // 'undo' move
-	// line.removeLastMove();
-	// return result;//new SearchResult(beta); // fail hard beta-cutoff
-	// }
-	// }
-	// if (result.getScore() > alpha) {
-	// LOG.debug("depth {}, move {}: new alpha {}, {} for posn\n{}", depthleft,
-	// move, result, alpha, newPosn);
-	// alpha = result.getScore(); // alpha acts like max in MiniMax
-	// currentBestLine = new Line(result.getLine().get());
-	// // print best line (if at top-level depth ?)
-	// if (depthleft == 4) {
-	// result.printUCI(outputStream);
-	// }
-	// }
-	// // 'undo' move
-	// line.removeLastMove();
-	// }
-	// if (currentBestScore <= MIN_VAL) {
-	// // test for checkmate or stalemate
-	// System.out.println("max: test for checkmate or stalemate");
-	// if (posn.isInCheck()) {
-	// return new SearchResult(currentBestScore + depthleft, line);
-	// } else {
-	// // statemate: evaluate as 0
-	// return new SearchResult(0, line);
-	// }
-	// }
-	// return new SearchResult(currentBestScore, currentBestLine);
-	// }
-
-	private String timeTaken(long durationInMs) {
-		return String.format("%02d.%02d", durationInMs / 1000, durationInMs % 1000);
+	private int internalIterativeDeepening(Position posn, int depth, int alpha, int beta, int ply) {
+		alphabeta(posn, depth - IID_REDUCTION, alpha, beta, ply);
+		if (stopped) {
+			return PackedMove.NO_MOVE;
+		}
+		int move = pvLength[ply] > ply ? pvTable[ply][ply] : PackedMove.NO_MOVE;
+		if (move == PackedMove.NO_MOVE && USE_ZOBRIST) {
+			// the reduced search failed low, but the transposition table may still have a best move
+			long entry = transpositionTable.probe(posn.getZobristKey());
+			if (entry != TranspositionTable.NOT_FOUND) {
+				move = TranspositionTable.getMove(entry);
+			}
+		}
+		pvLength[ply] = ply;
+		logDebug("IID found move {}", ply, PackedMove.toString(move));
+		return move;
 	}
 
-	@Override
-	public int getCurrentNbrNodesSearched() {
-		return NBR_NODES_SEARCHED;
+	private static boolean containsCheck(MoveList moves) {
+		for (int i = 0; i < moves.size(); i++) {
+			if (PackedMove.isCheck(moves.get(i))) {
+				return true;
+			}
+		}
+		return false;
 	}
 
-	@Override
-	public int getCurrentDepth() {
-		return startDepth;
+	/**
+	 * Null-move pruning is not used in PV nodes, when in check, after a null move,
+	 * near the leaves, when looking for a mate, or if the side to move only has
+	 * king and pawns (where zugzwang is likely). It is also not tried if the static
+	 * evaluation is already below beta, since the null move will rarely fail high.
+	 */
+	private boolean nullMoveAllowed(Position posn, int depth, int beta, int ply, int staticEval) {
+		// staticEval is MIN_VAL in PV nodes and when in check
+		return !nullMoveDisabled && ply > 0 && depth >= NULL_MOVE_MIN_DEPTH && staticEval >= beta
+				&& currentLine[ply - 1] != PackedMove.NO_MOVE && Math.abs(beta) < SearchSupport.MATE_THRESHOLD
+				&& posn.hasNonPawnMaterial(posn.getSideToMove());
 	}
 
-	@Override
-	public void incrementDepth(int increment) {
-		startDepth += increment;
+	/**
+	 * Null-move pruning: the side to move passes, and the opponent's position is
+	 * searched with reduced depth. If the score is still &gt;= beta, the real
+	 * score will almost certainly be as well (since making a move is usually
+	 * better than passing), and the node can be pruned.
+	 * <p>
+	 * For deep searches, a cut-off is verified by a reduced search of this node
+	 * with null moves disabled.
+	 *
+	 * @return the score of the null move, &gt;= beta if the node can be pruned
+	 */
+	private int nullMoveSearch(Position posn, int depth, int beta, int ply) {
+		int reduction = depth >= NULL_MOVE_DEEP_REDUCTION_DEPTH ? 3 : 2;
+		int reducedDepth = Math.max(depth - 1 - reduction, 0);
+		posn.makeNullMove();
+		currentLine[ply] = PackedMove.NO_MOVE;
+		nbrNodesSearched++;
+		int score = -alphabeta(posn, reducedDepth, -beta, -beta + 1, ply + 1);
+		posn.unmakeNullMove();
+		if (stopped || score < beta) {
+			return score;
+		}
+		// don't return an unproven mate score
+		if (score >= SearchSupport.MATE_THRESHOLD) {
+			score = beta;
+		}
+		if (depth >= NULL_MOVE_VERIFICATION_DEPTH) {
+			nullMoveDisabled = true;
+			int verificationScore = alphabeta(posn, Math.max(depth - reduction, 1), beta - 1, beta, ply);
+			nullMoveDisabled = false;
+			pvLength[ply] = ply;
+			if (verificationScore < beta) {
+				logDebug("null-move cut-off not verified, score {}, beta {}", ply, verificationScore, beta);
+				return verificationScore;
+			}
+		}
+		return score;
 	}
 
-	enum MiniMax {
-		MAX, MIN
+	/**
+	 * Stores 'move' followed by the PV of the child node as the PV of the node at
+	 * 'ply'.
+	 */
+	private void updatePv(int ply, int move) {
+		pvTable[ply][ply] = move;
+		int childLength = pvLength[ply + 1];
+		System.arraycopy(pvTable[ply + 1], ply + 1, pvTable[ply], ply + 1, childLength - (ply + 1));
+		pvLength[ply] = childLength;
 	}
 
-	enum EvalType {
-		BESTSOFAR, ALPHA_CUTOFF, BETA_CUTOFF, NORMAL;
+	/**
+	 * @return static evaluation of the position from the point of view of the side
+	 *         to move
+	 */
+	private int evaluate(Position posn) {
+		nbrPosnsEvaluated++;
+		int score = posn.evaluate();
+		return posn.getSideToMove() == Colour.WHITE ? score : -score;
+	}
 
-		public static String print(Set<EvalType> evaluations) {
-			StringBuilder sb = new StringBuilder();
-			for (EvalType eval : evaluations) {
-				if (eval != NORMAL) {
-					sb.append(eval).append(" ");
+	/**
+	 * Quiescence search: only captures and promotions are searched (all moves if in
+	 * check), until a 'quiet' position is reached which can be evaluated reliably.
+	 * <p>
+	 * Stand pat: the side to move does not have to capture, therefore the static
+	 * evaluation is a lower bound of the score. Delta pruning: captures which
+	 * cannot bring the score back up to alpha are skipped.
+	 *
+	 * @param posn   current position
+	 * @param alpha  lower bound of the window
+	 * @param beta   upper bound of the window
+	 * @param qDepth current depth of the quiescence search (starting at 0)
+	 * @param ply    distance to the root (to score mates)
+	 * @return score of the position, from the point of view of the side to move
+	 */
+	private int quiesce(Position posn, int alpha, int beta, int qDepth, int ply) {
+		if (rootDepth > 1 && clock.isTimeUp(nbrNodesSearched)) {
+			stopped = true;
+			return 0;
+		}
+		final boolean inCheck = posn.isKingInCheck() && qDepth < SearchSupport.MAX_QUIESCENCE_DEPTH;
+		MoveList moves = quiescenceMoveLists[qDepth];
+		int standPat = 0;
+		int bestScore;
+		if (inCheck) {
+			// no stand pat if in check, all moves have to be examined
+			posn.findMoves(posn.getSideToMove(), moves);
+			if (moves.isEmpty()) {
+				return SearchSupport.MIN_VAL + 1 + ply;
+			}
+			bestScore = SearchSupport.MIN_VAL;
+		} else {
+			standPat = evaluate(posn);
+			if (qDepth == SearchSupport.MAX_QUIESCENCE_DEPTH || standPat >= beta) {
+				return standPat;
+			}
+			alpha = Math.max(alpha, standPat);
+			bestScore = standPat;
+			posn.findCapturesAndPromotions(posn.getSideToMove(), moves);
+		}
+		int[] scores = quiescenceMoveScores[qDepth];
+		orderMoves(posn, moves, scores, PackedMove.NO_MOVE, PackedMove.NO_MOVE, ply, PackedMove.NO_MOVE);
+		for (int i = 0; i < moves.size(); i++) {
+			SearchSupport.pickNextMove(moves, scores, i);
+			int move = moves.get(i);
+			if (!inCheck && !PackedMove.isPromotion(move)
+					&& standPat + PackedMove.getCapturedPieceType(move).getValue() + DELTA_MARGIN <= alpha) {
+				continue;
+			}
+			posn.makeMove(move);
+			nbrNodesSearched++;
+			int score = -quiesce(posn, -beta, -alpha, qDepth + 1, ply + 1);
+			posn.unmakeMove();
+			if (stopped) {
+				return 0;
+			}
+			if (score > bestScore) {
+				bestScore = score;
+				if (score >= beta) {
+					return score;
 				}
+				alpha = Math.max(alpha, score);
 			}
-			return sb.toString();
 		}
+		return bestScore;
 	}
 
-	static class MoveTree {
-		private MiniMax type;
-		private Set<EvalType> evaluations;
-		private IMove move;
-		private int score;
-		private int depth;
-		private int min; // min value at time of evaluation
-		private int max;// max value at time of evaluation
-		private List<MoveTree> followingMoves;
-
-		public MoveTree(MiniMax type, IMove move, int depth, int min, int max) {
-			this.type = type;
-			this.move = move;
-			this.depth = depth;
-			this.min = min;
-			this.max = max;
-			this.evaluations = new HashSet<>();
-			this.evaluations.add(EvalType.NORMAL);
-			this.followingMoves = new ArrayList<>();
+	/**
+	 * Stores the result of searching a position in the transposition table. The
+	 * bound type is derived from the alpha/beta values at the start of the search.
+	 */
+	private void storeInTranspositionTable(Position posn, int bestMove, int value, int depth, int origAlpha,
+			int origBeta) {
+		// mate scores depend on the depth of the search, therefore are not stored in the transposition table
+		if (!USE_ZOBRIST || Math.abs(value) >= SearchSupport.MATE_THRESHOLD) {
+			return;
+		}
+		int bound;
+		if (value <= origAlpha) {
+			bound = TranspositionTable.UPPER_BOUND;
+		} else if (value >= origBeta) {
+			bound = TranspositionTable.LOWER_BOUND;
+		} else {
+			bound = TranspositionTable.EXACT;
 		}
+		transpositionTable.store(posn.getZobristKey(), bestMove, value, depth, bound);
+	}
 
-		public void setScore(int score) {
-			this.score = score;
+	/**
+	 * @return the move from the previous iteration's principal variation at this
+	 *         point of the search, or NO_MOVE if the current line is not following
+	 *         the PV
+	 */
+	private int pvMove(int ply) {
+		if (previousPv == null || ply >= previousPv.size()) {
+			return PackedMove.NO_MOVE;
+		}
+		for (int i = 0; i < ply; i++) {
+			if (currentLine[i] != previousPv.getMove(i)) {
+				return PackedMove.NO_MOVE;
+			}
 		}
+		return previousPv.getMove(ply);
+	}
 
-		public void addEvaluation(EvalType evaluation) {
-			this.evaluations.add(evaluation);
+	/**
+	 * Assigns a score to each move according to various heuristics. The PV move
+	 * and the hash move (if present) get the highest scores, followed by captures
+	 * and promotions. The moves are then picked in order of their score using
+	 * {@link SearchSupport#pickNextMove(MoveList, int[], int)}.
+	 *
+	 * @param posn     the current position
+	 * @param moves    all available moves
+	 * @param scores   will be filled with the score of each move
+	 * @param hashMove     best move from the transposition table, or NO_MOVE
+	 * @param pvMove       move from the previous iteration's PV, or NO_MOVE
+	 * @param ply          distance from the root (for the killer moves)
+	 * @param previousMove the move which led to this position (for the counter
+	 *                     move), or NO_MOVE
+	 */
+	private void orderMoves(Position posn, MoveList moves, int[] scores, int hashMove, int pvMove, int ply,
+			int previousMove) {
+		int killer1 = killerMoves[ply][0];
+		int killer2 = killerMoves[ply][1];
+		int counterMove = previousMove == PackedMove.NO_MOVE ? PackedMove.NO_MOVE
+				: counterMoves[PackedMove.getOrigin(previousMove)][PackedMove.getTarget(previousMove)];
+		int colour = posn.getSideToMove().ordinal();
+		for (int i = 0; i < moves.size(); i++) {
+			int move = moves.get(i);
+			if (move == pvMove) {
+				scores[i] = PV_MOVE_SCORE;
+			} else if (move == hashMove) {
+				scores[i] = HASH_MOVE_SCORE;
+			} else if (PackedMove.isCapture(move) || PackedMove.isPromotion(move)) {
+				scores[i] = SearchSupport.scoreCapture(posn, move, staticExchangeEvaluator);
+			} else if (move == killer1) {
+				scores[i] = KILLER_1_SCORE;
+			} else if (move == killer2) {
+				scores[i] = KILLER_2_SCORE;
+			} else if (move == counterMove) {
+				scores[i] = COUNTER_MOVE_SCORE;
+			} else {
+				scores[i] = history[colour][PackedMove.getOrigin(move)][PackedMove.getTarget(move)];
+			}
 		}
+	}
 
-		public void addEntry(MoveTree moveTree) {
-			this.followingMoves.add(moveTree);
+	/**
+	 * Called when a move caused a cut-off. If it is a quiet move, it is stored as
+	 * a killer move and counter move, and its history score is increased. The
+	 * quiet moves which were searched before it get a penalty.
+	 *
+	 * @param moves        moves of this node, in the order they were searched
+	 * @param index        index of the move which caused the cut-off
+	 * @param depth        remaining depth
+	 * @param ply          distance from the root
+	 * @param previousMove the move which led to this position, or NO_MOVE
+	 */
+	private void updateQuietMoveHeuristics(Position posn, MoveList moves, int index, int depth, int ply,
+			int previousMove) {
+		int move = moves.get(index);
+		if (PackedMove.isCapture(move) || PackedMove.isPromotion(move)) {
+			return;
 		}
+		if (killerMoves[ply][0] != move) {
+			killerMoves[ply][1] = killerMoves[ply][0];
+			killerMoves[ply][0] = move;
+		}
+		if (previousMove != PackedMove.NO_MOVE) {
+			counterMoves[PackedMove.getOrigin(previousMove)][PackedMove.getTarget(previousMove)] = move;
+		}
+		int[][] historyForColour = history[posn.getSideToMove().ordinal()];
+		int bonus = Math.min(depth * depth, HISTORY_MAX);
+		updateHistory(historyForColour, move, bonus);
+		for (int i = 0; i < index; i++) {
+			int quietMove = moves.get(i);
+			if (!PackedMove.isCapture(quietMove) && !PackedMove.isPromotion(quietMove)) {
+				updateHistory(historyForColour, quietMove, -bonus);
+			}
+		}
+	}
+
+	/**
+	 * 'History gravity': the more extreme the current value, the less it changes,
+	 * so the value stays within [-HISTORY_MAX, HISTORY_MAX] and old results fade
+	 * out.
+	 */
+	private void updateHistory(int[][] historyForColour, int move, int bonus) {
+		int from = PackedMove.getOrigin(move);
+		int to = PackedMove.getTarget(move);
+		historyForColour[from][to] += bonus - historyForColour[from][to] * Math.abs(bonus) / HISTORY_MAX;
+	}
 
-		@Override
-		public String toString() {
-			StringBuilder sb = new StringBuilder(500);
-			// ignore dummy first entry
-			if (type == null) {
-				sb.append("\n");
+	/**
+	 * Clears the transposition table (allocating it if not yet present), the killer
+	 * moves, the history and the counter moves, also for the helper searches.
+	 */
+	@Override
+	public void clear() {
+		if (USE_ZOBRIST) {
+			if (transpositionTable == null) {
+				transpositionTable = new TranspositionTable(hashSizeInMB);
 			} else {
-				sb.append(String.format("%s %s %d %s (min:%d max:%d) %d %s%n", type, "        ".substring(0, 9 - depth),
-						depth, move, min, max, score, EvalType.print(evaluations)));
+				transpositionTable.clear();
 			}
-			for (MoveTree entry : followingMoves) {
-				sb.append(entry.toString());
+		}
+		clearMoveOrderingHeuristics();
+		for (AlphaBeta3 helper : helpers) {
+			helper.clearMoveOrderingHeuristics();
+		}
+	}
+
+	private void clearMoveOrderingHeuristics() {
+		for (int[] killers : killerMoves) {
+			Arrays.fill(killers, PackedMove.NO_MOVE);
+		}
+		for (int[][] historyForColour : history) {
+			for (int[] historyFrom : historyForColour) {
+				Arrays.fill(historyFrom, 0);
 			}
-			return sb.toString();
 		}
+		for (int[] counterMovesFrom : counterMoves) {
+			Arrays.fill(counterMovesFrom, PackedMove.NO_MOVE);
+		}
+	}
+
+	/**
+	 * At the start of a new search: the killer moves are cleared (the plies refer
+	 * to a different root position) and the history scores are reduced.
+	 */
+	private void prepareMoveOrderingHeuristics() {
+		for (int[] killers : killerMoves) {
+			Arrays.fill(killers, PackedMove.NO_MOVE);
+		}
+		for (int[][] historyForColour : history) {
+			for (int[] historyFrom : historyForColour) {
+				for (int to = 0; to < 64; to++) {
+					historyFrom[to] /= 8;
+				}
+			}
+		}
+	}
+
+	private String timeTaken(long durationInMs) {
+		return String.format("%02d.%02d", durationInMs / 1000, durationInMs % 1000);
+	}
+
+	/**
+	 * @return number of nodes searched by this search and its helpers. Since the
+	 *         helpers' counters are read while they are running, this is
+	 *         approximate.
+	 */
+	@Override
+	public int getCurrentNbrNodesSearched() {
+		int nodes = nbrNodesSearched;
+		for (AlphaBeta3 helper : helpers) {
+			nodes += helper.nbrNodesSearched;
+		}
+		return nodes;
+	}
+
+	@Override
+	public int getCurrentDepth() {
+		return startDepth;
+	}
+
+	@Override
+	public void incrementDepth(int increment) {
+		startDepth += increment;
 	}
 
 }
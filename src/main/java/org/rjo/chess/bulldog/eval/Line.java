@@ -1,15 +1,21 @@
 package org.rjo.chess.bulldog.eval;
 
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Deque;
 
 import org.rjo.chess.bulldog.move.IMove;
+import org.rjo.chess.bulldog.move.PackedMove;
 
+/**
+ * A sequence of moves. The moves are stored in {@link PackedMove} format.
+ */
 public class Line {
-   private Deque<IMove> moves;
+   private int[] moves;
+   private int size;
 
    public Line() {
-      this.moves = new ArrayDeque<>();
+      this.moves = new int[10];
    }
 
    public Line(IMove m, int startDepth) {
@@ -19,23 +25,59 @@ public class Line {
 
    // copy constructor
    public Line(Line line) {
-      this();
-      moves.addAll(line.moves);
+      this.moves = Arrays.copyOf(line.moves, Math.max(line.size, 1));
+      this.size = line.size;
    }
 
    public void addMove(IMove m, int startDepth) {
-      moves.add(m);
-      if (moves.size() > startDepth + 1) { throw new RuntimeException("moves too long (startDepth: " + startDepth + "): " + moves); }
+      addMove(m.toPackedMove(), startDepth);
+   }
+
+   public void addMove(int m, int startDepth) {
+      if (size == moves.length) { moves = Arrays.copyOf(moves, moves.length * 2); }
+      moves[size++] = m;
+      if (size > startDepth + 1) { throw new RuntimeException("moves too long (startDepth: " + startDepth + "): " + this); }
    }
 
    public void removeLastMove() {
-      moves.removeLast();
+      size--;
+   }
+
+   /**
+    * Removes the first move from the line.
+    *
+    * @return the first move
+    */
+   public IMove removeFirstMove() {
+      int first = moves[0];
+      System.arraycopy(moves, 1, moves, 0, size - 1);
+      size--;
+      return PackedMove.toMove(first);
    }
 
-   public Deque<IMove> getMoves() { return moves; }
+   public int size() { return size; }
+
+   /**
+    * @param index index of move
+    * @return the move in packed format
+    */
+   public int getMove(int index) {
+      return moves[index];
+   }
+
+   /**
+    * @return the moves of this line, converted to IMove objects. Changes to the returned collection are not reflected in the line.
+    */
+   public Deque<IMove> getMoves() {
+      Deque<IMove> deque = new ArrayDeque<>(size);
+      for (int i = 0; i < size; i++) {
+         deque.add(PackedMove.toMove(moves[i]));
+      }
+      return deque;
+   }
 
    @Override
    public String toString() {
-      return moves.toString();
+      return getMoves().toString();
    }
-}
\ No newline at end of file
+}
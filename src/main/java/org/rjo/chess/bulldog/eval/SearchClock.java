@@ -0,0 +1,98 @@
+package org.rjo.chess.bulldog.eval;
+
+import org.rjo.chess.bulldog.piece.Colour;
+
+/**
+ * Decides when a search should stop, given the {@link SearchLimits}.
+ * <p>
+ * To keep the overhead low, the system time is only checked every {@value #NODES_BETWEEN_CHECKS} nodes. The search can also be stopped
+ * from another thread by calling {@link #stop()}; the search notices this at its next check.
+ *
+ * @author rich
+ */
+public class SearchClock {
+
+   static final int NODES_BETWEEN_CHECKS = 1024;
+
+   /** if the number of moves to go is not known, assume this many */
+   private static final int DEFAULT_MOVES_TO_GO = 30;
+   /** time to keep in reserve, to allow for communication overhead */
+   private static final long SAFETY_MARGIN_MS = 50;
+
+   private final long startTime;
+   private final long maxNodes;
+   /** after this time (ms since start), a new iteration will not be started. 0 == no limit */
+   private final long softLimit;
+   /** after this time (ms since start), the search is stopped. 0 == no limit */
+   private final long hardLimit;
+
+   /** no time limit: the search only stops when told to (or at the maximum depth) */
+   private final boolean infinite;
+
+   private long nextCheck = NODES_BETWEEN_CHECKS;
+   private volatile boolean stopped;
+
+   /**
+    * @param limits     the search limits
+    * @param sideToMove the side to move (to choose wtime or btime)
+    */
+   public SearchClock(SearchLimits limits, Colour sideToMove) {
+      this.startTime = System.currentTimeMillis();
+      this.maxNodes = limits.getNodes();
+      this.infinite = limits.isInfinite();
+      if (limits.isInfinite()) {
+         softLimit = 0;
+         hardLimit = 0;
+      } else if (limits.getMoveTime() > 0) {
+         softLimit = limits.getMoveTime();
+         hardLimit = limits.getMoveTime();
+      } else if (limits.getTime(sideToMove) > 0) {
+         long timeLeft = limits.getTime(sideToMove);
+         int movesToGo = limits.getMovesToGo() > 0 ? limits.getMovesToGo() : DEFAULT_MOVES_TO_GO;
+         long allotted = timeLeft / movesToGo + limits.getIncrement(sideToMove) * 3 / 4;
+         hardLimit = Math.max(1, Math.min(allotted, timeLeft - SAFETY_MARGIN_MS));
+         // the next iteration will probably take longer than all previous iterations together
+         softLimit = Math.max(1, hardLimit / 2);
+      } else {
+         softLimit = 0;
+         hardLimit = 0;
+      }
+   }
+
+   /**
+    * Called by the search at every node.
+    *
+    * @param nodesSearched number of nodes searched so far
+    * @return true if the search must stop
+    */
+   public boolean isTimeUp(long nodesSearched) {
+      if (stopped) { return true; }
+      if (maxNodes > 0 && nodesSearched >= maxNodes) {
+         stopped = true;
+      } else if (nodesSearched >= nextCheck) {
+         nextCheck = nodesSearched + NODES_BETWEEN_CHECKS;
+         if (hardLimit > 0 && getElapsedTime() >= hardLimit) { stopped = true; }
+      }
+      return stopped;
+   }
+
+   /**
+    * @return true if there is enough time left to start a new iteration
+    */
+   public boolean canStartIteration() {
+      return !stopped && (softLimit == 0 || getElapsedTime() < softLimit);
+   }
+
+   /** stops the search (can be called from another thread) */
+   public void stop() {
+      stopped = true;
+   }
+
+   public boolean isStopped() { return stopped; }
+
+   /** @return true if searching without a limit ("go infinite") */
+   public boolean isInfinite() { return infinite; }
+
+   /** @return ms since the clock was started */
+   public long getElapsedTime() { return System.currentTimeMillis() - startTime; }
+}
@@ -0,0 +1,71 @@
+package org.rjo.chess.bulldog.eval;
+
+import org.rjo.chess.bulldog.piece.Colour;
+
+/**
+ * Limits for a search, as given in the UCI "go" command. A value of 0 means 'not set'.
+ *
+ * @author rich
+ */
+public class SearchLimits {
+   /** remaining time on the clock in ms, indexed by colour */
+   private final long[] time = new long[2];
+   /** increment per move in ms, indexed by colour */
+   private final long[] increment = new long[2];
+   private int movesToGo;
+   private long moveTime;
+   private int depth;
+   private long nodes;
+   private boolean infinite;
+
+   /**
+    * @param depth the depth to search to
+    * @return limits for a search to a fixed depth
+    */
+   public static SearchLimits ofDepth(int depth) {
+      SearchLimits limits = new SearchLimits();
+      limits.setDepth(depth);
+      return limits;
+   }
+
+   public long getTime(Colour colour) { return time[colour.ordinal()]; }
+
+   public void setTime(Colour colour, long timeInMs) { this.time[colour.ordinal()] = timeInMs; }
+
+   public long getIncrement(Colour colour) { return increment[colour.ordinal()]; }
+
+   public void setIncrement(Colour colour, long incrementInMs) { this.increment[colour.ordinal()] = incrementInMs; }
+
+   public int getMovesToGo() { return movesToGo; }
+
+   public void setMovesToGo(int movesToGo) { this.movesToGo = movesToGo; }
+
+   public long getMoveTime() { return moveTime; }
+
+   public void setMoveTime(long moveTimeInMs) { this.moveTime = moveTimeInMs; }
+
+   public int getDepth() { return depth; }
+
+   public void setDepth(int depth) { this.depth = depth; }
+
+   public long getNodes() { return nodes; }
+
+   public void setNodes(long nodes) { this.nodes = nodes; }
+
+   public boolean isInfinite() { return infinite; }
+
+   public void setInfinite(boolean infinite) { this.infinite = infinite; }
+
+   /**
+    * @return true if the search is limited by time or nodes (as opposed to only by depth)
+    */
+   public boolean isTimeOrNodeLimited() {
+      return moveTime > 0 || nodes > 0 || time[0] > 0 || time[1] > 0;
+   }
+
+   @Override
+   public String toString() {
+      return String.format("wtime %d btime %d winc %d binc %d movestogo %d movetime %d depth %d nodes %d%s", time[0], time[1], increment[0],
+            increment[1], movesToGo, moveTime, depth, nodes, infinite ? " infinite" : "");
+   }
+}
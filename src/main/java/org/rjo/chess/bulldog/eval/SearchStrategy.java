@@ -6,6 +6,32 @@ public interface SearchStrategy {
 
 	MoveInfo findMove(Position posn);
 
+	/**
+	 * Searches the given position within the given limits. By default, the limits
+	 * are ignored.
+	 *
+	 * @param posn   the position
+	 * @param limits the search limits
+	 * @return the best move found
+	 */
+	default MoveInfo findMove(Position posn, SearchLimits limits) {
+		return findMove(posn);
+	}
+
+	/**
+	 * Stops a running search (called from another thread). The search will return
+	 * the best move found so far.
+	 */
+	default void stop() {
+	}
+
+	/**
+	 * Forgets everything learnt in previous searches, e.g. at the start of a new
+	 * game. By default, does nothing.
+	 */
+	default void clear() {
+	}
+
 	int getCurrentDepth();
 
 	void incrementDepth(int increment);
@@ -0,0 +1,98 @@
+package org.rjo.chess.bulldog.eval;
+
+import org.rjo.chess.bulldog.game.Position;
+import org.rjo.chess.bulldog.move.MoveList;
+import org.rjo.chess.bulldog.move.PackedMove;
+import org.rjo.chess.bulldog.piece.Pieces;
+
+/**
+ * Scores, move ordering and UCI output shared by the search implementations {@link AlphaBeta3} and {@link YoungBrothersWaitSearch}.
+ *
+ * @author rich
+ */
+final class SearchSupport {
+
+   static final int MIN_VAL = -99999;
+   static final int MAX_VAL = -MIN_VAL;
+   // a mate in 'n' plies from the root scores MAX_VAL - 1 - n; all scores above this threshold are mate scores
+   static final int MATE_THRESHOLD = MAX_VAL - 100;
+
+   // maximum depth of iterative deepening, if the search is limited by time or nodes
+   static final int MAX_DEPTH = 64;
+   // max depth of the quiescence search; at this depth the position is evaluated
+   static final int MAX_QUIESCENCE_DEPTH = 16;
+
+   // move ordering: captures and promotions score at least CAPTURE_SCORE, see scoreCapture
+   static final int CAPTURE_SCORE = 1 << 28;
+   // SEE values are clamped to [-SEE_RANGE, SEE_RANGE)
+   private static final int SEE_RANGE = 4096;
+   // for MVV-LVA, indexed by Piece.ordinal(): P=1, N=2, B=3, R=4, Q=5, K=6
+   private static final int[] PIECE_RANK = { 1, 4, 2, 3, 5, 6 };
+
+   private SearchSupport() {
+      // cannot be instantiated
+   }
+
+   /**
+    * Scores a capture or promotion: Most Valuable Victim - Least Valuable Aggressor, with Static Exchange Evaluation (SEE) as tiebreak. The
+    * quiescence search relies on this to keep the number of nodes down.
+    *
+    * @param posn the current position
+    * @param move the capture or promotion
+    * @param see  the SEE instance of the current thread
+    * @return the score, always greater than {@link #CAPTURE_SCORE}
+    * @see "https://www.chessprogramming.org/MVV-LVA"
+    */
+   static int scoreCapture(Position posn, int move, StaticExchangeEvaluator see) {
+      int victim = PackedMove.isCapture(move) ? PIECE_RANK[PackedMove.getCapturedPieceType(move).ordinal()] : 0;
+      if (PackedMove.isPromotion(move)) { victim += PIECE_RANK[PackedMove.getPromotedPieceType(move).ordinal()]; }
+      int attacker = PIECE_RANK[Pieces.toPiece(posn.pieceAt(PackedMove.getOrigin(move))).ordinal()];
+      int seeValue = Math.max(-SEE_RANGE, Math.min(SEE_RANGE - 1, see.evaluate(posn, move)));
+      return CAPTURE_SCORE + (victim * 8 + (7 - attacker)) * (2 * SEE_RANGE) + seeValue + SEE_RANGE;
+   }
+
+   /**
+    * Incremental selection sort: moves the best of the remaining moves to position 'index'. Since the search often cuts off after the
+    * first few moves, this is cheaper than sorting the whole list beforehand.
+    */
+   static void pickNextMove(MoveList moves, int[] scores, int index) {
+      int best = index;
+      for (int i = index + 1; i < moves.size(); i++) {
+         if (scores[i] > scores[best]) { best = i; }
+      }
+      if (best != index) {
+         moves.swap(index, best);
+         int score = scores[index];
+         scores[index] = scores[best];
+         scores[best] = score;
+      }
+   }
+
+   /**
+    * Creates the UCI 'info' line for a completed iteration. UCI scores are from the point of view of the side to move, as are the negamax
+    * scores.
+    *
+    * @param depth    depth of the iteration
+    * @param score    score of the iteration
+    * @param nodes    number of nodes searched
+    * @param timeMs   time since the start of the search
+    * @param pv       the principal variation
+    * @param pvLength number of moves of 'pv' to output
+    * @return the info line
+    */
+   static String iterationInfo(int depth, int score, long nodes, long timeMs, int[] pv, int pvLength) {
+      StringBuilder sb = new StringBuilder(100);
+      sb.append("info depth ").append(depth).append(" score ");
+      if (Math.abs(score) >= MATE_THRESHOLD) {
+         int plies = MAX_VAL - 1 - Math.abs(score);
+         sb.append("mate ").append(score > 0 ? (plies + 1) / 2 : -(plies + 1) / 2);
+      } else {
+         sb.append("cp ").append(score);
+      }
+      sb.append(" nodes ").append(nodes).append(" time ").append(timeMs).append(" pv");
+      for (int i = 0; i < pvLength; i++) {
+         sb.append(' ').append(PackedMove.toUCIString(pv[i]));
+      }
+      return sb.toString();
+   }
+}
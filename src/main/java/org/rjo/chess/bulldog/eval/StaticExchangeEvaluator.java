@@ -0,0 +1,117 @@
+package org.rjo.chess.bulldog.eval;
+
+import org.rjo.chess.bulldog.board.LeaperAttacks;
+import org.rjo.chess.bulldog.board.MagicBitboards;
+import org.rjo.chess.bulldog.game.Position;
+import org.rjo.chess.bulldog.move.PackedMove;
+import org.rjo.chess.bulldog.piece.Colour;
+import org.rjo.chess.bulldog.piece.Piece;
+import org.rjo.chess.bulldog.piece.Pieces;
+
+/**
+ * Static exchange evaluation (SEE): the material balance after all captures on the target square of a move, where each side always
+ * recaptures with its least valuable piece and can stop capturing if this is better.
+ * <p>
+ * Pins and checks are not taken into account. Sliding pieces 'behind' a capturing piece (x-rays) are found, since the attackers are
+ * recalculated after each capture using the remaining occupied squares.
+ * <p>
+ * Not thread-safe, since a scratch array is reused between calls: each search thread needs its own instance.
+ *
+ * @author rich
+ * @see "https://www.chessprogramming.org/Static_Exchange_Evaluation"
+ */
+public final class StaticExchangeEvaluator {
+
+   /** the gain after each capture of the exchange. There can be at most 32 captures, since there are only 32 pieces */
+   private final int[] gain = new int[32];
+
+   /**
+    * Calculates the static exchange evaluation of a capture (or promotion).
+    *
+    * @param posn the position (before the move)
+    * @param move the move in {@link PackedMove} format
+    * @return the expected material gain (in centipawns) for the side making the move. Can be negative.
+    */
+   public int evaluate(Position posn, int move) {
+      int origin = PackedMove.getOrigin(move);
+      int target = PackedMove.getTarget(move);
+      Colour side = Pieces.colourOf(posn.pieceAt(origin));
+      long occupied = posn.getOccupiedBitboard() & ~(1L << origin);
+
+      int depth = 0;
+      if (PackedMove.isEnpassant(move)) {
+         gain[0] = Piece.PAWN.getValue();
+         occupied &= ~(1L << PackedMove.getSquareOfPawnCapturedEnpassant(move));
+      } else {
+         byte captured = posn.pieceAt(target);
+         gain[0] = captured == 0 ? 0 : Pieces.toPiece(captured).getValue();
+      }
+      // value of the piece now standing on the target square
+      int pieceOnTarget;
+      if (PackedMove.isPromotion(move)) {
+         pieceOnTarget = PackedMove.getPromotedPieceType(move).getValue();
+         gain[0] += pieceOnTarget - Piece.PAWN.getValue();
+      } else {
+         pieceOnTarget = Pieces.toPiece(posn.pieceAt(origin)).getValue();
+      }
+
+      side = side.opposite();
+      while (true) {
+         int attackerSq = leastValuableAttacker(posn, target, side, occupied);
+         if (attackerSq == -1) { break; }
+         depth++;
+         // score if the piece on the target square is captured, from the point of view of the capturing side
+         gain[depth] = pieceOnTarget - gain[depth - 1];
+         pieceOnTarget = Pieces.toPiece(posn.pieceAt(attackerSq)).getValue();
+         occupied &= ~(1L << attackerSq);
+         side = side.opposite();
+      }
+      // each side can choose not to capture
+      while (depth > 0) {
+         gain[depth - 1] = -Math.max(-gain[depth - 1], gain[depth]);
+         depth--;
+      }
+      return gain[0];
+   }
+
+   /**
+    * @return the square of the least valuable piece of the given colour attacking 'target', or -1 if none.
+    */
+   private static int leastValuableAttacker(Position posn, int target, Colour colour, long occupied) {
+      long pieces = posn.getPiecesBitboard(colour) & occupied;
+      // a pawn of 'colour' attacks 'target' from the squares which a pawn of the other colour on 'target' would attack
+      long pawnAttackers = LeaperAttacks.pawnAttacks(colour.opposite(), target);
+      long attackers = (pawnAttackers | LeaperAttacks.knightAttacks(target) | LeaperAttacks.kingAttacks(target)
+            | MagicBitboards.queenAttacks(target, occupied)) & pieces;
+      int bestSq = -1;
+      int bestValue = Integer.MAX_VALUE;
+      while (attackers != 0) {
+         int sq = Long.numberOfTrailingZeros(attackers);
+         attackers &= attackers - 1;
+         byte piece = posn.pieceAt(sq);
+         long bit = 1L << sq;
+         boolean attacks;
+         if (Pieces.isPawn(piece)) {
+            attacks = (pawnAttackers & bit) != 0;
+         } else if (Pieces.isKnight(piece)) {
+            attacks = (LeaperAttacks.knightAttacks(target) & bit) != 0;
+         } else if (Pieces.isKing(piece)) {
+            attacks = (LeaperAttacks.kingAttacks(target) & bit) != 0;
+         } else if (Pieces.isRook(piece)) {
+            attacks = (MagicBitboards.rookAttacks(target, occupied) & bit) != 0;
+         } else if (Pieces.isBishop(piece)) {
+            attacks = (MagicBitboards.bishopAttacks(target, occupied) & bit) != 0;
+         } else {
+            attacks = true; // queen
+         }
+         if (attacks) {
+            int value = Pieces.toPiece(piece).getValue();
+            if (value < bestValue) {
+               bestValue = value;
+               bestSq = sq;
+            }
+         }
+      }
+      return bestSq;
+   }
+}
@@ -0,0 +1,182 @@
+package org.rjo.chess.bulldog.eval;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size transposition table, stored in a preallocated <code>long[]</code>. No objects are created when storing or probing.
+ * <p>
+ * Each entry takes two longs: the Zobrist key of the position XORed with the data, and the data.
+ * Entries are grouped into buckets of {@value #BUCKET_SIZE}; a key maps to one bucket. When storing, an entry with the same key is
+ * overwritten, otherwise the entry with the lowest depth (entries from a previous search count as shallower) is replaced.
+ * <p>
+ * The table does not use any locks, and can be shared between several search threads. Since the two longs of an entry are not written
+ * atomically, another thread may see the key of one entry and the data of another. Storing <code>key ^ data</code> detects this
+ * ("lockless hashing"): a torn entry does not verify against the key being probed and is treated as a miss.
+ * Probing returns the data as a <code>long</code>, which is decoded using the static getter methods.
+ *
+ * @formatter:off
+ * Format of the data:
+ *  bits  0-23  best move (PackedMove), 0 if not known
+ *  bits 24-41  score (signed)
+ *  bits 42-49  depth
+ *  bits 50-51  bound type (EXACT, LOWER_BOUND, UPPER_BOUND)
+ *  bits 52-59  age (the search in which the entry was stored)
+ * @formatter:on
+ *
+ * @author rich
+ * @see "https://www.chessprogramming.org/Transposition_Table"
+ * @see "https://www.chessprogramming.org/Shared_Hash_Table#Lockless"
+ */
+public class TranspositionTable {
+
+	public static final int DEFAULT_SIZE_IN_MB = 16;
+
+	/** the score is exact */
+	public static final int EXACT = 1;
+	/** the score is a lower bound, i.e. the real score is &gt;= the stored score (fail high) */
+	public static final int LOWER_BOUND = 2;
+	/** the score is an upper bound, i.e. the real score is &lt;= the stored score (fail low) */
+	public static final int UPPER_BOUND = 3;
+
+	/** returned from {@link #probe(long)} if the position is not in the table */
+	public static final long NOT_FOUND = 0;
+
+	private static final int BUCKET_SIZE = 2;
+	/** each entry takes 2 longs */
+	private static final int BYTES_PER_ENTRY = 16;
+
+	private static final long MOVE_MASK = 0xFFFFFF;
+	private static final int SCORE_SHIFT = 24;
+	private static final int SCORE_BITS = 18;
+	private static final long SCORE_MASK = (1L << SCORE_BITS) - 1;
+	private static final int DEPTH_SHIFT = 42;
+	private static final long DEPTH_MASK = 0xFF;
+	private static final int BOUND_SHIFT = 50;
+	private static final long BOUND_MASK = 0x3;
+	private static final int AGE_SHIFT = 52;
+	private static final long AGE_MASK = 0xFF;
+
+	/** pairs of (key ^ data, data) */
+	private final long[] table;
+	/** to map a key to the index of its bucket */
+	private final int bucketMask;
+
+	private int age;
+
+	public TranspositionTable() {
+		this(DEFAULT_SIZE_IN_MB);
+	}
+
+	/**
+	 * @param sizeInMB size of the table in MB. The number of entries is rounded down to a power of two.
+	 */
+	public TranspositionTable(int sizeInMB) {
+		if (sizeInMB < 1) {
+			throw new IllegalArgumentException("invalid size " + sizeInMB + ", must be >= 1 MB");
+		}
+		long nbrEntries = Long.highestOneBit(sizeInMB * 1024L * 1024L / BYTES_PER_ENTRY);
+		// array size is limited to Integer.MAX_VALUE
+		nbrEntries = Math.min(nbrEntries, 1L << 29);
+		this.table = new long[(int) nbrEntries * 2];
+		this.bucketMask = (int) (nbrEntries / BUCKET_SIZE) - 1;
+	}
+
+	/**
+	 * Must be called at the start of each new search. Entries from previous searches will then be replaced in preference.
+	 */
+	public void newSearch() {
+		age = (age + 1) & (int) AGE_MASK;
+	}
+
+	public void clear() {
+		Arrays.fill(table, 0);
+		age = 0;
+	}
+
+	/**
+	 * @param key Zobrist key of the position
+	 * @return the data stored for this position, or {@link #NOT_FOUND}
+	 */
+	public long probe(long key) {
+		int index = bucketIndex(key);
+		for (int i = 0; i < BUCKET_SIZE; i++, index += 2) {
+			long data = table[index + 1];
+			if (data != NOT_FOUND && (table[index] ^ data) == key) {
+				return data;
+			}
+		}
+		return NOT_FOUND;
+	}
+
+	/**
+	 * Stores the result of searching a position.
+	 *
+	 * @param key   Zobrist key of the position
+	 * @param move  best move (in PackedMove format), or 0 if not known
+	 * @param score score
+	 * @param depth depth to which the position was searched
+	 * @param bound one of {@link #EXACT}, {@link #LOWER_BOUND}, {@link #UPPER_BOUND}
+	 */
+	public void store(long key, int move, int score, int depth, int bound) {
+		int bucket = bucketIndex(key);
+		int replaceIndex = -1;
+		int lowestPriority = Integer.MAX_VALUE;
+		for (int i = 0, index = bucket; i < BUCKET_SIZE; i++, index += 2) {
+			long data = table[index + 1];
+			if (data == NOT_FOUND || (table[index] ^ data) == key) {
+				if (data != NOT_FOUND && move == 0) {
+					// keep the previous best move
+					move = getMove(data);
+				}
+				replaceIndex = index;
+				break;
+			}
+			int priority = getDepth(data) - (getAge(data) == age ? 0 : 256);
+			if (priority < lowestPriority) {
+				lowestPriority = priority;
+				replaceIndex = index;
+			}
+		}
+		long data = encode(move, score, depth, bound, age);
+		table[replaceIndex] = key ^ data;
+		table[replaceIndex + 1] = data;
+	}
+
+	static long encode(int move, int score, int depth, int bound, int age) {
+		if (depth < 0 || depth > DEPTH_MASK) {
+			throw new IllegalArgumentException("invalid depth " + depth);
+		}
+		return (move & MOVE_MASK) | ((score & SCORE_MASK) << SCORE_SHIFT) | ((long) depth << DEPTH_SHIFT)
+				| ((long) bound << BOUND_SHIFT) | ((long) age << AGE_SHIFT);
+	}
+
+	private int bucketIndex(long key) {
+		return ((int) key & bucketMask) * BUCKET_SIZE * 2;
+	}
+
+	/** @return the number of entries */
+	public int size() {
+		return table.length / 2;
+	}
+
+	public static int getMove(long data) {
+		return (int) (data & MOVE_MASK);
+	}
+
+	public static int getScore(long data) {
+		// shift left then right to restore the sign
+		return (int) (data << (64 - SCORE_SHIFT - SCORE_BITS) >> (64 - SCORE_BITS));
+	}
+
+	public static int getDepth(long data) {
+		return (int) ((data >>> DEPTH_SHIFT) & DEPTH_MASK);
+	}
+
+	public static int getBound(long data) {
+		return (int) ((data >>> BOUND_SHIFT) & BOUND_MASK);
+	}
+
+	static int getAge(long data) {
+		return (int) ((data >>> AGE_SHIFT) & AGE_MASK);
+	}
+}
@@ -0,0 +1,408 @@
+package org.rjo.chess.bulldog.eval;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rjo.chess.bulldog.game.Position;
+import org.rjo.chess.bulldog.move.MoveList;
+import org.rjo.chess.bulldog.move.PackedMove;
+import org.rjo.chess.bulldog.piece.Colour;
+
+/**
+ * Parallel alpha-beta search using the "young brothers wait" concept (YBWC). At each node the first (eldest) move is searched
+ * sequentially. Only then are the remaining moves (the young brothers) searched in parallel, as tasks on a {@link ForkJoinPool}, with the
+ * alpha value found by the eldest brother. If one of them causes a beta cut-off, the searches of its brothers (and all their subtrees) are
+ * aborted.
+ * <p>
+ * Near the leaves (less than {@value #SPLIT_MIN_DEPTH} plies remaining) the search is sequential, since the overhead of a task would be
+ * larger than the gain. Unlike {@link AlphaBeta3} no transposition table or forward pruning is used, the search is meant for comparing the
+ * scaling of a tree-splitting parallel search with {@link AlphaBeta3}.
+ *
+ * @author rich
+ * @see "https://www.chessprogramming.org/Young_Brothers_Wait_Concept"
+ */
+public class YoungBrothersWaitSearch implements SearchStrategy {
+   private static final Logger LOG = LogManager.getLogger(YoungBrothersWaitSearch.class);
+
+   /** nodes with less than this depth remaining are searched sequentially */
+   static final int SPLIT_MIN_DEPTH = 3;
+
+   // move ordering scores (captures and promotions: see SearchSupport.scoreCapture)
+   private static final int FIRST_MOVE_SCORE = Integer.MAX_VALUE;
+   private static final int CHECK_SCORE = SearchSupport.CAPTURE_SCORE - 1;
+
+   /** returned by a task which was aborted */
+   private static final Result ABORTED = new Result(0, new int[0]);
+
+   private final PrintStream outputStream;
+   private final ForkJoinPool pool;
+   // the sequential part of the search uses these buffers, one per thread, to avoid allocations
+   private final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+
+   // depth of the search if no other limits are given
+   private int startDepth = 4;
+   // depth of the current iteration
+   private volatile int rootDepth;
+   private volatile SearchClock clock;
+   // set if the clock ran out during an iteration. The results of this iteration are discarded
+   private volatile boolean stopped;
+   private final LongAdder nbrNodesSearched = new LongAdder();
+
+   /**
+    * Uses one thread per available processor.
+    *
+    * @param out stream for UCI output
+    */
+   public YoungBrothersWaitSearch(PrintStream out) {
+      this(out, Runtime.getRuntime().availableProcessors());
+   }
+
+   /**
+    * @param out         stream for UCI output
+    * @param parallelism number of threads of the fork/join pool
+    */
+   public YoungBrothersWaitSearch(PrintStream out, int parallelism) {
+      if (parallelism < 1) { throw new IllegalArgumentException("invalid parallelism " + parallelism + ", must be >= 1"); }
+      this.outputStream = out;
+      this.pool = new ForkJoinPool(parallelism);
+   }
+
+   @Override
+   public MoveInfo findMove(Position posn) {
+      return findMove(posn, SearchLimits.ofDepth(startDepth));
+   }
+
+   /**
+    * Iterative deepening, each iteration is searched in parallel. The best move found in the previous iteration is searched first.
+    */
+   @Override
+   public MoveInfo findMove(Position posn, SearchLimits limits) {
+      nbrNodesSearched.reset();
+      stopped = false;
+      clock = new SearchClock(limits, posn.getSideToMove());
+      int maxDepth;
+      if (limits.getDepth() > 0) {
+         maxDepth = Math.min(limits.getDepth(), SearchSupport.MAX_DEPTH);
+      } else {
+         maxDepth = limits.isInfinite() || limits.isTimeOrNodeLimited() ? SearchSupport.MAX_DEPTH : startDepth;
+      }
+      Result result = null;
+      for (int depth = 1; depth <= maxDepth; depth++) {
+         rootDepth = depth;
+         int firstMove = result == null ? PackedMove.NO_MOVE : result.pv[0];
+         Result iterationResult = pool
+               .invoke(new NodeTask(null, new Position(posn, null), depth, SearchSupport.MIN_VAL, SearchSupport.MAX_VAL, 0, firstMove));
+         if (stopped || iterationResult == ABORTED) { break; }
+         result = iterationResult;
+         printIterationInfo(depth, result);
+         // a forced mate has been found, searching deeper won't find anything better
+         if (Math.abs(result.score) >= SearchSupport.MATE_THRESHOLD || !clock.canStartIteration()) { break; }
+      }
+      LOG.info("evaluated {} nodes, time: {} ms, score: {}", nbrNodesSearched.sum(), clock.getElapsedTime(), result.score);
+      Line line = new Line();
+      for (int move : result.pv) {
+         line.addMove(move, result.pv.length);
+      }
+      MoveInfo moveInfo = new MoveInfo();
+      moveInfo.setMove(line.removeFirstMove());
+      moveInfo.setLine(line);
+      return moveInfo;
+   }
+
+   @Override
+   public void stop() {
+      SearchClock c = clock;
+      if (c != null) { c.stop(); }
+   }
+
+   private void printIterationInfo(int depth, Result result) {
+      outputStream.println(SearchSupport.iterationInfo(depth, result.score, nbrNodesSearched.sum(), clock.getElapsedTime(), result.pv,
+            result.pv.length));
+   }
+
+   /** the (side to move relative) score of a node, and its principal variation */
+   private static final class Result {
+      private final int score;
+      private final int[] pv;
+
+      Result(int score, int[] pv) {
+         this.score = score;
+         this.pv = pv;
+      }
+   }
+
+   /** preallocated structures for the sequential search */
+   private static final class Buffers {
+      private final MoveList[] moveLists = new MoveList[SPLIT_MIN_DEPTH];
+      private final int[][] moveScores = new int[SPLIT_MIN_DEPTH][MoveList.DEFAULT_CAPACITY];
+      private final MoveList[] quiescenceMoveLists = new MoveList[SearchSupport.MAX_QUIESCENCE_DEPTH + 1];
+      private final int[][] quiescenceMoveScores = new int[SearchSupport.MAX_QUIESCENCE_DEPTH + 1][MoveList.DEFAULT_CAPACITY];
+      // triangular PV table, indexed by the ply relative to the start of the sequential search
+      private final int[][] pvTable = new int[SPLIT_MIN_DEPTH + 1][SPLIT_MIN_DEPTH + 1];
+      private final int[] pvLength = new int[SPLIT_MIN_DEPTH + 1];
+      private final StaticExchangeEvaluator staticExchangeEvaluator = new StaticExchangeEvaluator();
+      private long nodes;
+
+      Buffers() {
+         for (int i = 0; i < moveLists.length; i++) {
+            moveLists[i] = new MoveList();
+         }
+         for (int i = 0; i < quiescenceMoveLists.length; i++) {
+            quiescenceMoveLists[i] = new MoveList();
+         }
+      }
+   }
+
+   /**
+    * Searches one node. A node with enough depth remaining splits: its eldest brother is searched in the current thread, the other moves
+    * are forked as new tasks.
+    */
+   private final class NodeTask extends RecursiveTask<Result> {
+      private static final long serialVersionUID = 1L;
+
+      private final NodeTask parent;
+      // the position of this node. Tasks which have been forked have their own copy
+      private final transient Position posn;
+      private final int depth;
+      private final int beta;
+      private final int ply;
+      // move to search first, or NO_MOVE
+      private final int firstMove;
+      // the move which led to this node, if this task has been forked (and has to report its result to the parent)
+      private int forkedMove = PackedMove.NO_MOVE;
+
+      // guarded by 'this', since the forked children update these values
+      private int alpha;
+      private int bestScore = SearchSupport.MIN_VAL;
+      private int[] bestPv = new int[0];
+      // set when a beta cut-off occurred, the children which are still running are aborted
+      private volatile boolean cutoff;
+
+      NodeTask(NodeTask parent, Position posn, int depth, int alpha, int beta, int ply, int firstMove) {
+         this.parent = parent;
+         this.posn = posn;
+         this.depth = depth;
+         this.alpha = alpha;
+         this.beta = beta;
+         this.ply = ply;
+         this.firstMove = firstMove;
+      }
+
+      @Override
+      protected Result compute() {
+         Result result = search();
+         if (forkedMove != PackedMove.NO_MOVE && result != ABORTED) { parent.update(forkedMove, result); }
+         return result;
+      }
+
+      /** @return true if the search has been stopped, or a beta cut-off occurred in one of the parent nodes */
+      private boolean isAborted() {
+         if (stopped) { return true; }
+         for (NodeTask node = parent; node != null; node = node.parent) {
+            if (node.cutoff) { return true; }
+         }
+         return false;
+      }
+
+      private synchronized int currentAlpha() {
+         return alpha;
+      }
+
+      /** stores the result of a child node. Sets 'cutoff' if the score is &gt;= beta */
+      private synchronized void update(int move, Result childResult) {
+         int score = -childResult.score;
+         if (score > bestScore) {
+            bestScore = score;
+            bestPv = new int[childResult.pv.length + 1];
+            bestPv[0] = move;
+            System.arraycopy(childResult.pv, 0, bestPv, 1, childResult.pv.length);
+            if (score > alpha) { alpha = score; }
+            if (score >= beta) { cutoff = true; }
+         }
+      }
+
+      private synchronized Result result() {
+         return new Result(bestScore, bestPv);
+      }
+
+      private Result search() {
+         if (isAborted()) { return ABORTED; }
+         if (depth < SPLIT_MIN_DEPTH) {
+            Buffers buf = buffers.get();
+            int score = alphabeta(buf, posn, depth, alpha, beta, ply, 0, firstMove);
+            if (isAborted()) { return ABORTED; }
+            int[] pv = new int[buf.pvLength[0]];
+            System.arraycopy(buf.pvTable[0], 0, pv, 0, pv.length);
+            return new Result(score, pv);
+         }
+
+         MoveList moves = new MoveList();
+         posn.findMoves(posn.getSideToMove(), moves);
+         if (moves.isEmpty()) {
+            // checkmate or stalemate. Favour a mate in 3 rather than a mate in 5
+            return new Result(posn.isKingInCheck() ? SearchSupport.MIN_VAL + 1 + ply : 0, new int[0]);
+         }
+         int[] scores = new int[moves.size()];
+         orderMoves(posn, moves, scores, firstMove, buffers.get().staticExchangeEvaluator);
+         for (int i = 0; i < moves.size(); i++) {
+            SearchSupport.pickNextMove(moves, scores, i);
+         }
+
+         // the eldest brother is searched first, in this thread
+         int eldest = moves.get(0);
+         posn.makeMove(eldest);
+         nbrNodesSearched.increment();
+         Result eldestResult = new NodeTask(this, posn, depth - 1, -beta, -alpha, ply + 1, PackedMove.NO_MOVE).compute();
+         posn.unmakeMove();
+         if (eldestResult == ABORTED) { return ABORTED; }
+         update(eldest, eldestResult);
+         if (cutoff) { return result(); }
+
+         // then the young brothers, in parallel. Each gets its own copy of the position
+         List<NodeTask> brothers = new ArrayList<>(moves.size() - 1);
+         int currentAlpha = currentAlpha();
+         for (int i = 1; i < moves.size(); i++) {
+            int move = moves.get(i);
+            Position childPosn = new Position(posn, null);
+            childPosn.makeMove(move);
+            nbrNodesSearched.increment();
+            NodeTask brother = new NodeTask(this, childPosn, depth - 1, -beta, -currentAlpha, ply + 1, PackedMove.NO_MOVE);
+            brother.forkedMove = move;
+            brothers.add(brother);
+         }
+         invokeAll(brothers);
+         if (isAborted()) { return ABORTED; }
+         return result();
+      }
+
+      /**
+       * Sequential fail-soft negamax search, used near the leaves.
+       *
+       * @param buf       buffers of the current thread
+       * @param p         current position
+       * @param d         remaining depth
+       * @param a         alpha
+       * @param b         beta
+       * @param absPly    distance from the root (for mate scores)
+       * @param localPly  distance from the start of the sequential search (for the buffers)
+       * @param moveFirst move to search first, or NO_MOVE
+       * @return the score
+       */
+      private int alphabeta(Buffers buf, Position p, int d, int a, int b, int absPly, int localPly, int moveFirst) {
+         buf.pvLength[localPly] = localPly;
+         if (checkAborted(buf)) { return 0; }
+         if (d == 0) { return quiesce(buf, p, a, b, 0, absPly); }
+         MoveList moves = buf.moveLists[d];
+         p.findMoves(p.getSideToMove(), moves);
+         if (moves.isEmpty()) { return p.isKingInCheck() ? SearchSupport.MIN_VAL + 1 + absPly : 0; }
+         int[] scores = buf.moveScores[d];
+         orderMoves(p, moves, scores, moveFirst, buf.staticExchangeEvaluator);
+         int best = SearchSupport.MIN_VAL;
+         for (int i = 0; i < moves.size(); i++) {
+            SearchSupport.pickNextMove(moves, scores, i);
+            int move = moves.get(i);
+            p.makeMove(move);
+            nbrNodesSearched.increment();
+            int score = -alphabeta(buf, p, d - 1, -b, -a, absPly + 1, localPly + 1, PackedMove.NO_MOVE);
+            p.unmakeMove();
+            if (score > best) {
+               best = score;
+               if (score > a) {
+                  a = score;
+                  buf.pvTable[localPly][localPly] = move;
+                  int childLength = buf.pvLength[localPly + 1];
+                  System.arraycopy(buf.pvTable[localPly + 1], localPly + 1, buf.pvTable[localPly], localPly + 1,
+                        childLength - (localPly + 1));
+                  buf.pvLength[localPly] = childLength;
+                  if (score >= b) { break; }
+               }
+            }
+         }
+         return best;
+      }
+
+      /** captures and promotions only (all moves if in check), with stand pat */
+      private int quiesce(Buffers buf, Position p, int a, int b, int qDepth, int absPly) {
+         if (checkAborted(buf)) { return 0; }
+         boolean inCheck = p.isKingInCheck() && qDepth < SearchSupport.MAX_QUIESCENCE_DEPTH;
+         MoveList moves = buf.quiescenceMoveLists[qDepth];
+         int best;
+         if (inCheck) {
+            p.findMoves(p.getSideToMove(), moves);
+            if (moves.isEmpty()) { return SearchSupport.MIN_VAL + 1 + absPly; }
+            best = SearchSupport.MIN_VAL;
+         } else {
+            int eval = p.evaluate();
+            best = p.getSideToMove() == Colour.WHITE ? eval : -eval;
+            if (qDepth == SearchSupport.MAX_QUIESCENCE_DEPTH || best >= b) { return best; }
+            a = Math.max(a, best);
+            p.findCapturesAndPromotions(p.getSideToMove(), moves);
+         }
+         int[] scores = buf.quiescenceMoveScores[qDepth];
+         orderMoves(p, moves, scores, PackedMove.NO_MOVE, buf.staticExchangeEvaluator);
+         for (int i = 0; i < moves.size(); i++) {
+            SearchSupport.pickNextMove(moves, scores, i);
+            int move = moves.get(i);
+            p.makeMove(move);
+            nbrNodesSearched.increment();
+            int score = -quiesce(buf, p, -b, -a, qDepth + 1, absPly + 1);
+            p.unmakeMove();
+            if (score > best) {
+               best = score;
+               if (score >= b) { return score; }
+               a = Math.max(a, score);
+            }
+         }
+         return best;
+      }
+
+      /** checks for an abort, and the clock every {@value SearchClock#NODES_BETWEEN_CHECKS} nodes */
+      private boolean checkAborted(Buffers buf) {
+         if ((++buf.nodes & (SearchClock.NODES_BETWEEN_CHECKS - 1)) == 0 && rootDepth > 1
+               && clock.isTimeUp(nbrNodesSearched.sum())) {
+            stopped = true;
+         }
+         return isAborted();
+      }
+   }
+
+   /**
+    * 'moveFirst' first, then captures and promotions (MVV-LVA with SEE, as in {@link AlphaBeta3}), then checks. Killer moves and the
+    * history heuristic are not used, since their tables would have to be shared between the threads.
+    */
+   private static void orderMoves(Position posn, MoveList moves, int[] scores, int moveFirst, StaticExchangeEvaluator see) {
+      for (int i = 0; i < moves.size(); i++) {
+         int move = moves.get(i);
+         if (move == moveFirst) {
+            scores[i] = FIRST_MOVE_SCORE;
+         } else if (PackedMove.isCapture(move) || PackedMove.isPromotion(move)) {
+            scores[i] = SearchSupport.scoreCapture(posn, move, see);
+         } else if (PackedMove.isCheck(move)) {
+            scores[i] = CHECK_SCORE;
+         } else {
+            scores[i] = 0;
+         }
+      }
+   }
+
+   @Override
+   public int getCurrentNbrNodesSearched() {
+      return (int) nbrNodesSearched.sum();
+   }
+
+   @Override
+   public int getCurrentDepth() {
+      return startDepth;
+   }
+
+   @Override
+   public void incrementDepth(int increment) {
+      startDepth += increment;
+   }
+}
@@ -102,6 +102,7 @@ public class Fen {
       Square enpassantSquare = parseEnpassantSquare(fenTokenizer.nextToken());
       Position posn = parsePosition(fen, sideToMove, castlingRights, enpassantSquare);
       posn.setKingInCheck(posn.isKingInCheck(posn.getKingsSquare(sideToMove), sideToMove));
+      posn.initialiseZobristKey();
 
       Game game = new Game(posn);
       if (fenTokenizer.hasMoreTokens()) {
@@ -52,6 +52,7 @@ public class Game {
 
       g.posn.setSideToMove(Colour.WHITE);
       g.posn.setCastlingRights(new boolean[][] { { true, true }, { true, true } });
+      g.posn.initialiseZobristKey();
       g.setHalfmoveClock(0);
       g.setMoveNumber(1);
       return g;
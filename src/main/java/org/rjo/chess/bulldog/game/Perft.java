@@ -1,5 +1,6 @@
 package org.rjo.chess.bulldog.game;
 
+import java.io.PrintStream;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
@@ -8,21 +9,31 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.commons.lang3.time.StopWatch;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.rjo.chess.bulldog.move.IMove;
+import org.rjo.chess.bulldog.move.MoveList;
+import org.rjo.chess.bulldog.move.PackedMove;
 import org.rjo.chess.bulldog.piece.Colour;
 
 /**
  * Starting point for 'Perft' tests.
+ * <p>
+ * The multi-threaded version runs on long-lived {@link ForkJoinPool}s (one per number of threads), which are shared between calls. The move
+ * tree is split recursively into tasks down to the 'split depth' (number of plies from the root); below this the leaf nodes are counted
+ * sequentially. Idle threads steal tasks from busy ones, so the load is balanced even if a few root moves account for most of the nodes.
+ * <p>
+ * Optionally a {@link PerftCache} can be set, to avoid counting transposed positions more than once. Detailed statistics (captures, checks,
+ * mates etc.) can be collected with {@link #findStats(Position, Colour, int, int, int, ProgressListener)}.
  *
  * @author rich
  */
@@ -33,28 +44,66 @@ public class Perft {
    /** flag to make sure logging is switched off when starting from main */
    private static boolean LOG_MOVES = true;
 
+   /**
+    * if set, the moves at depth 1 are only counted ("bulk counting"), instead of making each move. This means the leaf moves are not logged.
+    */
+   private static boolean bulkCounting = true;
+
+   /** if set, the number of leaf nodes of already visited positions are taken from this cache. Shared by all threads */
+   private static PerftCache cache;
+
    public static final int DEFAULT_NBR_THREADS = 6;
+   /** default number of plies (from the root) in which the move tree will be split into separate tasks */
+   public static final int DEFAULT_SPLIT_DEPTH = 2;
+
+   /**
+    * the shared pools, one per parallelism, created on demand. A pool is never shut down, since it may still be in use by another caller
+    * (the worker threads are daemon threads and die when idle)
+    */
+   private static final Map<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
 
    // see PerftTest::posn6ply5
    // 5ply: 164.075.551 moves
-   private static int[] EXPECTED_MOVES = new int[] { 46, 2079, 89890, 3894594, 164075551 };
+   private static long[] EXPECTED_MOVES = new long[] { 46, 2079, 89890, 3894594, 164075551 };
    private static final int REQD_DEPTH = 5;
 
-   static record MoveResult(IMove move, int nbrMoves) {
+   static record MoveResult(IMove move, long nbrMoves) {
    }
 
+   /**
+    * Reports the progress of a multi-threaded perft run.
+    */
+   @FunctionalInterface
+   public interface ProgressListener {
+      /**
+       * Called each time a sub-tree has been counted. Can be called from several threads at once.
+       *
+       * @param rootMovesFinished number of root moves which have been completely counted
+       * @param nbrRootMoves      total number of root moves
+       * @param nodesSoFar        number of leaf nodes counted so far
+       */
+      void progress(int rootMovesFinished, int nbrRootMoves, long nodesSoFar);
+   }
+
+   /** does not report anything */
+   public static final ProgressListener NO_PROGRESS = (finished, total, nodes) -> {
+   };
+
    private Perft() {
    }
 
    public static void main(String[] args) {
       Game game = Fen.decode("r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10");
       int nbrThreads = DEFAULT_NBR_THREADS;
+      int splitDepth = DEFAULT_SPLIT_DEPTH;
       var startDelay = 0;
       var nbrIters = 1;
       LOG_MOVES = false;
       if (args.length >= 1) { nbrThreads = Integer.parseInt(args[0]); }
       if (args.length >= 2) { startDelay = Integer.parseInt(args[1]); }
       if (args.length >= 3) { nbrIters = Integer.parseInt(args[2]); }
+      if (args.length >= 4) { splitDepth = Integer.parseInt(args[3]); }
+      if (args.length >= 5) { setCache(new PerftCache(Integer.parseInt(args[4]))); }
       if (startDelay > 0) {
          System.out.println(String.format("Starting in %s ms ...", startDelay));
          try {
@@ -64,13 +113,14 @@ public class Perft {
          }
       }
       long totalTime = 0;
-      int totalMoves = 0;
+      long totalMoves = 0;
       for (int iter = 0; iter < nbrIters; iter++) {
          System.out.println(
                String.format("Iteration %2d. %s::posn6ply%d starting (%d threads)...", (iter + 1), Perft.class.getCanonicalName(), REQD_DEPTH, nbrThreads));
          StopWatch sw = new StopWatch();
          sw.start();
-         int moves = Perft.findAndCountMoves(game.getPosition(), Colour.WHITE, REQD_DEPTH, nbrThreads);
+         long moves = countMoves(
+               findMovesMultiThreaded(game.getPosition(), Colour.WHITE, REQD_DEPTH, nbrThreads, splitDepth, progressPrinter(System.out, 1000)));
          sw.stop();
          long time = sw.getTime();
          totalTime += time;
@@ -86,6 +136,24 @@ public class Perft {
       }
    }
 
+   /**
+    * @param bulkCounting if true (the default), the moves at depth 1 are only counted and not made
+    */
+   public static void setBulkCounting(boolean bulkCounting) {
+      Perft.bulkCounting = bulkCounting;
+   }
+
+   public static boolean isBulkCounting() { return bulkCounting; }
+
+   /**
+    * @param cache the cache to use for transposed positions, or null to switch off caching (the default)
+    */
+   public static void setCache(PerftCache cache) {
+      Perft.cache = cache;
+   }
+
+   public static PerftCache getCache() { return cache; }
+
    /**
     * Finds and counts the moves (combination of {@link #findMoves(Position, Colour, int, int)} and {@link #countMoves(Map)}).
     *
@@ -95,8 +163,8 @@ public class Perft {
     * @param nbrThreads number of threads
     * @return nbr of moves in the move map
     */
-   public static int findAndCountMoves(Position posn, Colour sideToMove, int depth, int nbrThreads) {
-      Map<String, Integer> moveMap = findMoves(posn, sideToMove, depth, nbrThreads);
+   public static long findAndCountMoves(Position posn, Colour sideToMove, int depth, int nbrThreads) {
+      Map<String, Long> moveMap = findMoves(posn, sideToMove, depth, nbrThreads);
       return countMoves(moveMap);
    }
 
@@ -110,7 +178,7 @@ public class Perft {
     * @return a map containing all the start moves for the <code>sideToMove</code> and for each map entry, a number representing how many leaf
     *         nodes there are from this starting move.
     */
-   public static Map<String, Integer> findMoves(Position posn, Colour sideToMove, int depth, int nbrThreads) {
+   public static Map<String, Long> findMoves(Position posn, Colour sideToMove, int depth, int nbrThreads) {
       if (nbrThreads == 1) {
          return findMovesSingleThreaded(posn, sideToMove, depth);
       } else {
@@ -119,10 +187,10 @@ public class Perft {
    }
 
    // singlethreaded version. good for debugging, since the moves are generated in a well-defined order
-   public static Map<String, Integer> findMovesSingleThreaded(Position posn, Colour sideToMove, int depth) {
+   public static Map<String, Long> findMovesSingleThreaded(Position posn, Colour sideToMove, int depth) {
       if (depth < 1) { throw new IllegalArgumentException("depth must be >= 1"); }
 
-      Map<String, Integer> moveMap = new HashMap<>();
+      Map<String, Long> moveMap = new HashMap<>();
       for (final IMove move : posn.findMoves(sideToMove)) {
          logMove(depth, move, posn);
          Position posnAfterMove = posn.move(move);
@@ -131,36 +199,209 @@ public class Perft {
       return moveMap;
    }
 
-   public static Map<String, Integer> findMovesMultiThreaded(Position posn, Colour sideToMove, int depth, int nbrThreads) {
+   public static Map<String, Long> findMovesMultiThreaded(Position posn, Colour sideToMove, int depth, int nbrThreads) {
+      return findMovesMultiThreaded(posn, sideToMove, depth, nbrThreads, DEFAULT_SPLIT_DEPTH, NO_PROGRESS);
+   }
+
+   /**
+    * Multi-threaded version of {@link #findMovesSingleThreaded(Position, Colour, int)}, running on the shared {@link ForkJoinPool}. There is
+    * no timeout, the method returns when all moves have been counted.
+    *
+    * @param posn       a game position
+    * @param sideToMove the starting colour
+    * @param depth      the required depth to search
+    * @param nbrThreads number of threads in the pool
+    * @param splitDepth number of plies (from the root) in which the move tree will be split into separate tasks. Must be &gt;= 1.
+    * @param listener   will be informed of the progress
+    * @return a map containing all the start moves for the <code>sideToMove</code> and for each map entry, a number representing how many leaf
+    *         nodes there are from this starting move.
+    */
+   public static Map<String, Long> findMovesMultiThreaded(Position posn, Colour sideToMove, int depth, int nbrThreads, int splitDepth,
+         ProgressListener listener) {
+      return findMovesMultiThreaded(posn, sideToMove, depth, nbrThreads, splitDepth, new PerftRun(depth, listener, false));
+   }
+
+   /**
+    * Collects detailed statistics (see {@link PerftStats}) for all depths up to the given depth, in a single pass. Each thread collects its
+    * own statistics, which are combined at the end. Since every move has to be made, neither bulk counting nor the cache is used.
+    *
+    * @param posn       a game position
+    * @param sideToMove the starting colour
+    * @param depth      the required depth to search
+    * @param nbrThreads number of threads in the pool
+    * @param splitDepth number of plies (from the root) in which the move tree will be split into separate tasks. Must be &gt;= 1.
+    * @param listener   will be informed of the progress
+    * @return the statistics
+    */
+   public static PerftStats findStats(Position posn, Colour sideToMove, int depth, int nbrThreads, int splitDepth, ProgressListener listener) {
+      PerftRun run = new PerftRun(depth, listener, true);
+      findMovesMultiThreaded(posn, sideToMove, depth, nbrThreads, splitDepth, run);
+      PerftStats stats = new PerftStats(depth);
+      run.threadStats.forEach(stats::add);
+      return stats;
+   }
+
+   private static Map<String, Long> findMovesMultiThreaded(Position posn, Colour sideToMove, int depth, int nbrThreads, int splitDepth,
+         PerftRun run) {
       if (depth < 1) { throw new IllegalArgumentException("depth must be >= 1"); }
-      ExecutorService threadPool = Executors.newFixedThreadPool(nbrThreads);
-      List<Future<MoveResult>> futures = new ArrayList<>(200);
+      if (splitDepth < 1) { throw new IllegalArgumentException("splitDepth must be >= 1"); }
 
-      Map<String, Integer> moveMap = new HashMap<>();
-      for (final IMove move : posn.findMoves(sideToMove)) {
+      List<IMove> rootMoves = posn.findMoves(sideToMove);
+      run.nbrRootMoves = rootMoves.size();
+      List<PerftTask> tasks = new ArrayList<>(rootMoves.size());
+      for (final IMove move : rootMoves) {
          logMove(depth, move, posn);
          Position posnAfterMove = posn.move(move);
-         Callable<MoveResult> callable = () -> findMovesInternal(move, posnAfterMove, sideToMove.opposite(), depth - 1);
-         futures.add(threadPool.submit(callable));
+         if (run.collectStats) { run.stats().record(1, move.toPackedMove(), posnAfterMove); }
+         tasks.add(new PerftTask(run, move, posnAfterMove, sideToMove.opposite(), depth - 1, splitDepth - 1));
       }
-      threadPool.shutdown();
-      try {
-         threadPool.awaitTermination(2, TimeUnit.MINUTES);
-      } catch (InterruptedException e) {
-         e.printStackTrace();
-      } finally {
-         if (!threadPool.isTerminated()) { System.err.println("cancel non-finished tasks"); }
-         threadPool.shutdownNow();
-      }
-      futures.forEach(fut -> {
-         try {
-            moveMap.put(fut.get().move.toString(), fut.get().nbrMoves);
-         } catch (InterruptedException | ExecutionException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+      Map<String, Long> moveMap = new ConcurrentHashMap<>();
+      getPool(nbrThreads).invoke(new RecursiveTask<Void>() {
+         private static final long serialVersionUID = 1L;
+
+         @Override
+         protected Void compute() {
+            invokeAll(tasks);
+            tasks.forEach(task -> moveMap.put(task.rootMove.toString(), task.join()));
+            return null;
          }
       });
-      return moveMap;
+      return new HashMap<>(moveMap);
+   }
+
+   /**
+    * Returns the shared pool with the required parallelism, which is created if not yet present.
+    *
+    * @param nbrThreads required number of threads
+    * @return the pool
+    */
+   static ForkJoinPool getPool(int nbrThreads) {
+      if (nbrThreads < 1) { throw new IllegalArgumentException("nbrThreads must be >= 1"); }
+      return POOLS.computeIfAbsent(nbrThreads, ForkJoinPool::new);
+   }
+
+   /**
+    * Returns a listener which prints the progress to <code>out</code>, at most once per <code>intervalMs</code>.
+    *
+    * @param out        where to print
+    * @param intervalMs minimum time between two reports
+    * @return the listener
+    */
+   public static ProgressListener progressPrinter(PrintStream out, long intervalMs) {
+      final long start = System.currentTimeMillis();
+      final AtomicLong lastReport = new AtomicLong(start);
+      return (finished, total, nodes) -> {
+         long now = System.currentTimeMillis();
+         long last = lastReport.get();
+         if ((now - last >= intervalMs || finished == total) && lastReport.compareAndSet(last, now)) {
+            long elapsed = Math.max(1, now - start);
+            out.println(String.format(Locale.GERMANY, "%3d/%3d root moves, %,15d nodes (%,6d ms) (%7.1f nodes/ms)", finished, total, nodes, elapsed,
+                  (nodes * 1.0) / elapsed));
+         }
+      };
+   }
+
+   /** state shared by all tasks of one multi-threaded perft run */
+   private static class PerftRun {
+      private final int depth;
+      private final ProgressListener listener;
+      /** if set, detailed statistics are collected */
+      private final boolean collectStats;
+      private final AtomicInteger rootMovesFinished = new AtomicInteger();
+      private final LongAdder nodes = new LongAdder();
+      /** the statistics of each thread. Only used if 'collectStats' is set */
+      private final List<PerftStats> threadStats = new CopyOnWriteArrayList<>();
+      private final ThreadLocal<PerftStats> stats;
+      /** set before the tasks are started */
+      private int nbrRootMoves;
+
+      PerftRun(int depth, ProgressListener listener, boolean collectStats) {
+         this.depth = depth;
+         this.listener = listener;
+         this.collectStats = collectStats;
+         this.stats = ThreadLocal.withInitial(() -> {
+            PerftStats threadStat = new PerftStats(depth);
+            threadStats.add(threadStat);
+            return threadStat;
+         });
+      }
+
+      /** @return the statistics of the current thread */
+      PerftStats stats() {
+         return stats.get();
+      }
+
+      void subtreeFinished(long nbrMoves) {
+         nodes.add(nbrMoves);
+         listener.progress(rootMovesFinished.get(), nbrRootMoves, nodes.sum());
+      }
+
+      void rootMoveFinished() {
+         listener.progress(rootMovesFinished.incrementAndGet(), nbrRootMoves, nodes.sum());
+      }
+   }
+
+   /**
+    * Counts the leaf nodes below a position. Until 'splitDepth' reaches zero, a subtask is forked for each move; afterwards the leaf nodes are
+    * counted sequentially.
+    */
+   private static class PerftTask extends RecursiveTask<Long> {
+      private static final long serialVersionUID = 1L;
+
+      // not serializable, but the tasks are never serialized
+      private final transient PerftRun run;
+      /** the root move leading to 'posn', or null if this task is further down the tree */
+      private final transient IMove rootMove;
+      private final transient Position posn;
+      private final Colour sideToMove;
+      private final int depth;
+      private final int splitDepth;
+
+      PerftTask(PerftRun run, IMove rootMove, Position posn, Colour sideToMove, int depth, int splitDepth) {
+         this.run = run;
+         this.rootMove = rootMove;
+         this.posn = posn;
+         this.sideToMove = sideToMove;
+         this.depth = depth;
+         this.splitDepth = splitDepth;
+      }
+
+      @Override
+      protected Long compute() {
+         long nbrMoves = count();
+         if (rootMove != null) { run.rootMoveFinished(); }
+         return nbrMoves;
+      }
+
+      private long count() {
+         if (splitDepth <= 0 || depth <= 1) {
+            long nbrMoves;
+            if (run.collectStats) {
+               nbrMoves = collectStats(posn, sideToMove, depth, createMoveLists(depth), run.depth, run.stats());
+            } else {
+               nbrMoves = findMovesInternal(null, posn, sideToMove, depth).nbrMoves;
+            }
+            run.subtreeFinished(nbrMoves);
+            return nbrMoves;
+         }
+         MoveList moves = new MoveList();
+         posn.findMoves(sideToMove, moves);
+         List<PerftTask> subtasks = new ArrayList<>(moves.size());
+         for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            logMove(depth, move, posn);
+            Position posnAfterMove = new Position(posn, null);
+            posnAfterMove.makeMove(move);
+            if (run.collectStats) { run.stats().record(run.depth - depth + 1, move, posnAfterMove); }
+            subtasks.add(new PerftTask(run, null, posnAfterMove, sideToMove.opposite(), depth - 1, splitDepth - 1));
+         }
+         invokeAll(subtasks);
+         long totalMoves = 0;
+         for (PerftTask subtask : subtasks) {
+            totalMoves += subtask.join();
+         }
+         return totalMoves;
+      }
    }
 
    /**
@@ -173,29 +414,92 @@ public class Perft {
     * @return the total number of moves (leaf nodes) found from this position.
     */
    private static MoveResult findMovesInternal(final IMove move, final Position posn, Colour sideToMove, int depth) {
-      if (depth == 0) { return new MoveResult(move, 1); }
-      int totalMoves = 0;
-      for (IMove newMove : posn.findMoves(sideToMove)) {
+      return new MoveResult(move, countLeafNodes(posn, sideToMove, depth, createMoveLists(depth)));
+   }
+
+   /** @return one MoveList per depth, to be reused for all positions at that depth */
+   private static MoveList[] createMoveLists(int depth) {
+      MoveList[] moveLists = new MoveList[depth + 1];
+      for (int i = 0; i <= depth; i++) {
+         moveLists[i] = new MoveList();
+      }
+      return moveLists;
+   }
+
+   /**
+    * Recursive part of {@link #findMovesInternal(IMove, Position, Colour, int)}, using packed moves. The moves are made and unmade in 'posn',
+    * which is therefore unchanged on return.
+    *
+    * @param posn       the game position
+    * @param sideToMove the side to move
+    * @param depth      the remaining depth
+    * @param moveLists  MoveList for each depth
+    * @return the number of leaf nodes
+    */
+   private static long countLeafNodes(Position posn, Colour sideToMove, int depth, MoveList[] moveLists) {
+      if (depth == 0) { return 1; }
+      if (depth == 1 && bulkCounting) { return posn.countLegalMoves(sideToMove); }
+      PerftCache perftCache = cache;
+      if (perftCache != null && depth > 1) {
+         long cachedMoves = perftCache.probe(posn.getZobristKey(), depth);
+         if (cachedMoves != PerftCache.NOT_FOUND) { return cachedMoves; }
+      }
+      long totalMoves = 0;
+      MoveList moves = moveLists[depth];
+      posn.findMoves(sideToMove, moves);
+      for (int i = 0; i < moves.size(); i++) {
+         int newMove = moves.get(i);
          logMove(depth, newMove, posn);
-         Position posnAfterMove = posn.move(newMove);
-         MoveResult moveResult = findMovesInternal(newMove, posnAfterMove, sideToMove.opposite(), depth - 1);
-         totalMoves += moveResult.nbrMoves;
+         posn.makeMove(newMove);
+         totalMoves += countLeafNodes(posn, sideToMove.opposite(), depth - 1, moveLists);
+         posn.unmakeMove();
       }
-      // System.out.println(move + "=" + totalMoves);
-      return new MoveResult(move, totalMoves);
+      if (perftCache != null && depth > 1) { perftCache.store(posn.getZobristKey(), depth, totalMoves); }
+      return totalMoves;
+   }
+
+   /**
+    * As {@link #countLeafNodes(Position, Colour, int, MoveList[])}, but records every move in 'stats'.
+    *
+    * @param posn       the game position
+    * @param sideToMove the side to move
+    * @param depth      the remaining depth
+    * @param moveLists  MoveList for each depth
+    * @param totalDepth depth of the perft run, to calculate the current ply
+    * @param stats      the statistics of the current thread
+    * @return the number of leaf nodes
+    */
+   private static long collectStats(Position posn, Colour sideToMove, int depth, MoveList[] moveLists, int totalDepth, PerftStats stats) {
+      if (depth == 0) { return 1; }
+      int ply = totalDepth - depth + 1;
+      long totalMoves = 0;
+      MoveList moves = moveLists[depth];
+      posn.findMoves(sideToMove, moves);
+      for (int i = 0; i < moves.size(); i++) {
+         int newMove = moves.get(i);
+         posn.makeMove(newMove);
+         stats.record(ply, newMove, posn);
+         totalMoves += collectStats(posn, sideToMove.opposite(), depth - 1, moveLists, totalDepth, stats);
+         posn.unmakeMove();
+      }
+      return totalMoves;
    }
 
    /**
     * Helper routine to return the total number of moves found, given a map as returned from findMoves.
     */
-   public static int countMoves(Map<String, Integer> moveMap) {
-      int nbrMoves = 0;
-      for (Entry<String,Integer> e: moveMap.entrySet()) {
+   public static long countMoves(Map<String, Long> moveMap) {
+      long nbrMoves = 0;
+      for (Entry<String, Long> e : moveMap.entrySet()) {
     	  nbrMoves += e.getValue();
       }
       return nbrMoves;
    }
 
+   private static void logMove(int depth, int move, Position posn) {
+      if (LOG_MOVES && MOVE_LOGGER.isDebugEnabled()) { MOVE_LOGGER.debug(depth + " " + PackedMove.toString(move) + " " + Fen.encode(posn)); }
+   }
+
    private static void logMove(int depth, IMove move, Position posn) {
       if (LOG_MOVES && MOVE_LOGGER.isDebugEnabled()) {
          // MOVE_LOGGER.debug(depth + " " + move + " " + Fen.encode(posn) + "\n" + posn.getCheckState()[0] + "\n" +
@@ -0,0 +1,97 @@
+package org.rjo.chess.bulldog.game;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size cache of perft results, mapping (Zobrist key, depth) to the number of leaf nodes. Stored in a preallocated
+ * <code>long[]</code>, so no objects are created when storing or probing.
+ * <p>
+ * Each entry takes two longs: the Zobrist key XORed with the data, and the data (the depth in the lowest 8 bits, the node count in the
+ * remaining bits). The table does not use any locks and can be shared between several perft threads; as in the
+ * {@link org.rjo.chess.bulldog.eval.TranspositionTable}, an entry which has been partly overwritten by another thread does not verify
+ * against the key and is treated as a miss.
+ * <p>
+ * Entries are grouped into buckets of two. The first entry of a bucket is only replaced by a result of a greater or equal depth (which took
+ * longer to calculate), the second entry is always replaced.
+ * <p>
+ * NB: two different positions with the same 64-bit Zobrist key would lead to a wrong count. This is very unlikely, but for absolute
+ * certainty the perft must be run without a cache.
+ *
+ * @author rich
+ * @see "https://www.chessprogramming.org/Perft#Hashing"
+ */
+public class PerftCache {
+
+   /** returned from {@link #probe(long, int)} if the position is not in the cache */
+   public static final long NOT_FOUND = -1;
+
+   /** each entry takes 2 longs */
+   private static final int BYTES_PER_ENTRY = 16;
+   private static final long DEPTH_MASK = 0xFF;
+   private static final int COUNT_SHIFT = 8;
+
+   /** pairs of (key ^ data, data) */
+   private final long[] table;
+   /** to map a key to the index of its bucket */
+   private final int bucketMask;
+
+   /**
+    * @param sizeInMB size of the cache in MB. The number of entries is rounded down to a power of two.
+    */
+   public PerftCache(int sizeInMB) {
+      if (sizeInMB < 1) { throw new IllegalArgumentException("invalid size " + sizeInMB + ", must be >= 1 MB"); }
+      long nbrEntries = Long.highestOneBit(sizeInMB * 1024L * 1024L / BYTES_PER_ENTRY);
+      // array size is limited to Integer.MAX_VALUE
+      nbrEntries = Math.min(nbrEntries, 1L << 29);
+      this.table = new long[(int) nbrEntries * 2];
+      this.bucketMask = (int) (nbrEntries / 2) - 1;
+   }
+
+   /**
+    * @param key   Zobrist key of the position
+    * @param depth the depth
+    * @return the number of leaf nodes stored for this position and depth, or {@link #NOT_FOUND}
+    */
+   public long probe(long key, int depth) {
+      int index = bucketIndex(key, depth);
+      for (int i = 0; i < 2; i++, index += 2) {
+         long data = table[index + 1];
+         if (data != 0 && (table[index] ^ data) == key && (data & DEPTH_MASK) == depth) { return data >>> COUNT_SHIFT; }
+      }
+      return NOT_FOUND;
+   }
+
+   /**
+    * Stores the number of leaf nodes of a position.
+    *
+    * @param key   Zobrist key of the position
+    * @param depth the depth (1..255)
+    * @param count number of leaf nodes
+    */
+   public void store(long key, int depth, long count) {
+      if (depth < 1 || depth > DEPTH_MASK) { throw new IllegalArgumentException("invalid depth " + depth); }
+      long data = (count << COUNT_SHIFT) | depth;
+      int index = bucketIndex(key, depth);
+      long firstData = table[index + 1];
+      if (firstData != 0 && (firstData & DEPTH_MASK) > depth) {
+         // keep the deeper result
+         index += 2;
+      }
+      table[index] = key ^ data;
+      table[index + 1] = data;
+   }
+
+   public void clear() {
+      Arrays.fill(table, 0);
+   }
+
+   /** @return the number of entries */
+   public int size() {
+      return table.length / 2;
+   }
+
+   /** a position at different depths is stored in neighbouring buckets */
+   private int bucketIndex(long key, int depth) {
+      return (((int) key + depth) & bucketMask) * 4;
+   }
+}
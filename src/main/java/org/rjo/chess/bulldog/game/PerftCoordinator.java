@@ -0,0 +1,262 @@
+package org.rjo.chess.bulldog.game;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.rjo.chess.bulldog.move.IMove;
+import org.rjo.chess.bulldog.piece.Colour;
+
+/**
+ * Coordinator of a distributed perft. The move tree is split at 'splitPly' into work units, which are handed out to {@link PerftWorker}s
+ * connecting over TCP. A worker which loses its connection (e.g. the process died) has its current unit handed out again to another worker.
+ * <p>
+ * The protocol is line-based:
+ *
+ * <pre>
+ * worker:      GET
+ * coordinator: UNIT &lt;id&gt; &lt;depth&gt; &lt;fen&gt;   (or DONE, if all units have been counted)
+ * worker:      RESULT &lt;id&gt; &lt;nbr of leaf nodes&gt;
+ * coordinator: UNIT ... (or DONE)
+ * </pre>
+ *
+ * A worker which does not reply within the 'worker timeout' (e.g. it hangs, or its machine disappeared without closing the connection) is
+ * disconnected, and its unit is handed out again. The timeout must therefore be longer than the time needed to count one unit.
+ *
+ * @author rich
+ */
+public class PerftCoordinator implements Closeable {
+
+   static final String GET = "GET";
+   static final String UNIT = "UNIT";
+   static final String RESULT = "RESULT";
+   static final String DONE = "DONE";
+
+   public static final int DEFAULT_SPLIT_PLY = 2;
+   public static final int DEFAULT_WORKER_TIMEOUT_MS = 30 * 60 * 1000;
+
+   private static record WorkUnit(int id, int depth, String fen) {
+   }
+
+   private final ServerSocket serverSocket;
+   private final int nbrUnits;
+   private final BlockingDeque<WorkUnit> pendingUnits = new LinkedBlockingDeque<>();
+   /** results of the work units, -1 if not yet known */
+   private final AtomicLongArray results;
+   private final CountDownLatch unitsRemaining;
+   private final AtomicLong totalMoves = new AtomicLong();
+   private final AtomicInteger nbrReassigned = new AtomicInteger();
+   private final List<Socket> workerSockets = new ArrayList<>();
+   private final PrintStream out;
+   private volatile int workerTimeoutMs = DEFAULT_WORKER_TIMEOUT_MS;
+
+   /**
+    * Splits the tree into work units and opens the server socket on the loopback address.
+    *
+    * @param fen      the start position
+    * @param depth    the required depth
+    * @param splitPly the tree is split into work units at this ply
+    * @param port     port to listen on; 0 chooses a free port (see {@link #getPort()})
+    * @param out      progress reports will be printed here
+    * @throws IOException if the server socket cannot be opened
+    */
+   public PerftCoordinator(String fen, int depth, int splitPly, int port, PrintStream out) throws IOException {
+      this(fen, depth, splitPly, new ServerSocket(port, 50, InetAddress.getLoopbackAddress()), out);
+   }
+
+   /**
+    * As {@link #PerftCoordinator(String, int, int, int, PrintStream)}, with an already opened server socket (e.g. to accept workers from
+    * other machines).
+    */
+   public PerftCoordinator(String fen, int depth, int splitPly, ServerSocket serverSocket, PrintStream out) {
+      if (depth < 1) { throw new IllegalArgumentException("depth must be >= 1"); }
+      if (splitPly < 1) { throw new IllegalArgumentException("splitPly must be >= 1"); }
+      this.serverSocket = serverSocket;
+      this.out = out;
+      Position posn = Fen.decode(fen).getPosition();
+      createWorkUnits(posn, posn.getSideToMove(), depth, Math.min(splitPly, depth));
+      this.nbrUnits = pendingUnits.size();
+      this.results = new AtomicLongArray(nbrUnits);
+      for (int i = 0; i < nbrUnits; i++) {
+         results.set(i, -1);
+      }
+      this.unitsRemaining = new CountDownLatch(nbrUnits);
+   }
+
+   /**
+    * Usage: PerftCoordinator &lt;depth&gt; &lt;port&gt; [&lt;split ply&gt; [&lt;fen&gt;]]
+    * <p>
+    * The default position is 'posn6' from {@link Perft}. Workers are started with {@link PerftWorker#main(String[])}.
+    */
+   public static void main(String[] args) throws IOException, InterruptedException {
+      if (args.length < 2) {
+         System.err.println("Usage: PerftCoordinator <depth> <port> [<split ply> [<fen>]]");
+         System.exit(1);
+      }
+      int depth = Integer.parseInt(args[0]);
+      int splitPly = args.length >= 3 ? Integer.parseInt(args[2]) : DEFAULT_SPLIT_PLY;
+      String fen = args.length >= 4 ? args[3] : "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10";
+      try (PerftCoordinator coordinator = new PerftCoordinator(fen, depth, splitPly, Integer.parseInt(args[1]), System.out)) {
+         System.out.println(String.format("%d work units, waiting for workers on port %d", coordinator.nbrUnits, coordinator.getPort()));
+         long nbrMoves = coordinator.run();
+         System.out.println(String.format(Locale.GERMANY, "%dply: %,d moves", depth, nbrMoves));
+      }
+   }
+
+   private void createWorkUnits(Position posn, Colour sideToMove, int depth, int pliesToSplit) {
+      if (pliesToSplit == 0) {
+         pendingUnits.add(new WorkUnit(pendingUnits.size(), depth, Fen.encode(posn)));
+         return;
+      }
+      for (IMove move : posn.findMoves(sideToMove)) {
+         createWorkUnits(posn.move(move), sideToMove.opposite(), depth - 1, pliesToSplit - 1);
+      }
+   }
+
+   /** @return the port the coordinator is listening on */
+   public int getPort() { return serverSocket.getLocalPort(); }
+
+   /** @return the number of work units */
+   public int getNbrUnits() { return nbrUnits; }
+
+   /** @return how often a work unit had to be handed out again, since a worker lost its connection or timed out */
+   public int getNbrReassigned() { return nbrReassigned.get(); }
+
+   /**
+    * Sets how long to wait for the next message of a worker, before it is disconnected. Applies to workers connecting afterwards.
+    *
+    * @param workerTimeoutMs timeout in milliseconds, must be &gt; 0
+    */
+   public void setWorkerTimeout(int workerTimeoutMs) {
+      if (workerTimeoutMs <= 0) { throw new IllegalArgumentException("workerTimeoutMs must be > 0"); }
+      this.workerTimeoutMs = workerTimeoutMs;
+   }
+
+   /**
+    * Accepts workers until all work units have been counted.
+    *
+    * @return the number of leaf nodes
+    * @throws InterruptedException if interrupted while waiting
+    */
+   public long run() throws InterruptedException {
+      Thread acceptor = new Thread(this::acceptWorkers, "perft-coordinator");
+      acceptor.setDaemon(true);
+      acceptor.start();
+      unitsRemaining.await();
+      return totalMoves.get();
+   }
+
+   private void acceptWorkers() {
+      while (!serverSocket.isClosed()) {
+         try {
+            Socket socket = serverSocket.accept();
+            synchronized (workerSockets) {
+               workerSockets.add(socket);
+            }
+            Thread handler = new Thread(() -> handleWorker(socket), "perft-worker-" + socket.getRemoteSocketAddress());
+            handler.setDaemon(true);
+            handler.start();
+         } catch (SocketException e) {
+            // server socket has been closed
+         } catch (IOException e) {
+            out.println("cannot accept worker: " + e);
+         }
+      }
+   }
+
+   /**
+    * Hands out work units to one worker. If the connection is lost or the worker does not reply in time, the worker's current unit is put
+    * back in the queue.
+    */
+   private void handleWorker(Socket socket) {
+      WorkUnit currentUnit = null;
+      try (socket;
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8)) {
+         socket.setSoTimeout(workerTimeoutMs);
+         String line;
+         while ((line = in.readLine()) != null) {
+            String[] tokens = line.split(" ");
+            if (RESULT.equals(tokens[0])) {
+               if (currentUnit == null || Integer.parseInt(tokens[1]) != currentUnit.id()) {
+                  throw new IllegalStateException("unexpected result: " + line);
+               }
+               storeResult(currentUnit, Long.parseLong(tokens[2]));
+               currentUnit = null;
+            } else if (!GET.equals(tokens[0])) {
+               throw new IllegalStateException("unexpected message: " + line);
+            }
+            currentUnit = nextUnit();
+            if (currentUnit == null) {
+               writer.println(DONE);
+               return;
+            }
+            writer.println(UNIT + " " + currentUnit.id() + " " + currentUnit.depth() + " " + currentUnit.fen());
+         }
+      } catch (IOException | RuntimeException e) {
+         out.println("lost worker " + socket.getRemoteSocketAddress() + ": " + e);
+      } finally {
+         if (currentUnit != null) {
+            nbrReassigned.incrementAndGet();
+            pendingUnits.addFirst(currentUnit);
+         }
+      }
+   }
+
+   /**
+    * @return the next unit to be counted, or null if all units have been counted. Waits if all remaining units are currently assigned.
+    */
+   private WorkUnit nextUnit() throws InterruptedIOException {
+      try {
+         while (unitsRemaining.getCount() > 0) {
+            WorkUnit unit = pendingUnits.poll(100, TimeUnit.MILLISECONDS);
+            if (unit != null) { return unit; }
+         }
+         return null;
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException("interrupted while waiting for a work unit");
+      }
+   }
+
+   private void storeResult(WorkUnit unit, long nbrMoves) {
+      if (results.compareAndSet(unit.id(), -1, nbrMoves)) {
+         long total = totalMoves.addAndGet(nbrMoves);
+         unitsRemaining.countDown();
+         long unitsFinished = nbrUnits - unitsRemaining.getCount();
+         if (unitsFinished % 100 == 0 || unitsFinished == nbrUnits) {
+            out.println(String.format(Locale.GERMANY, "%,6d/%,6d units, %,18d nodes", unitsFinished, nbrUnits, total));
+         }
+      }
+   }
+
+   /** closes the server socket and all connections to workers */
+   @Override
+   public void close() throws IOException {
+      serverSocket.close();
+      synchronized (workerSockets) {
+         for (Socket socket : workerSockets) {
+            socket.close();
+         }
+      }
+   }
+}
@@ -0,0 +1,227 @@
+package org.rjo.chess.bulldog.game;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.rjo.chess.bulldog.move.IMove;
+import org.rjo.chess.bulldog.piece.Colour;
+
+/**
+ * Runs a deep perft which can be interrupted and resumed.
+ * <p>
+ * The move tree is split at ply 2 into 'work units' (a root move and a reply), which are counted one after the other using the
+ * multi-threaded {@link Perft}. The result of each unit is appended to a checkpoint file as soon as it is known. When restarted with the
+ * same checkpoint file, the units already stored there are not counted again.
+ * <p>
+ * Format of the checkpoint file:
+ *
+ * <pre>
+ * # fen &lt;FEN of the start position&gt;
+ * # depth &lt;depth&gt;
+ * &lt;root move&gt; &lt;reply&gt;\t&lt;nbr of leaf nodes&gt;
+ * ...
+ * </pre>
+ *
+ * An incomplete last line (without a line separator, if the process was killed while writing) is ignored.
+ *
+ * @author rich
+ */
+public class PerftRunner {
+
+   /** the tree is split into work units at this ply */
+   static final int UNIT_PLY = 2;
+   private static final String FEN_HEADER = "# fen ";
+   private static final String DEPTH_HEADER = "# depth ";
+
+   private final String fen;
+   private final int depth;
+   private final Path checkpointFile;
+   private final int nbrThreads;
+   private final PrintStream out;
+   /** minimum time between two progress reports */
+   private final long reportIntervalMs;
+
+   private int nbrUnitsResumed;
+   private int nbrUnitsCounted;
+
+   /**
+    * @param fen              the start position
+    * @param depth            the required depth
+    * @param checkpointFile   where to store the results of the work units. Will be created if not present.
+    * @param nbrThreads       number of threads
+    * @param out              progress reports will be printed here
+    * @param reportIntervalMs minimum time between two progress reports
+    */
+   public PerftRunner(String fen, int depth, Path checkpointFile, int nbrThreads, PrintStream out, long reportIntervalMs) {
+      if (depth < 1) { throw new IllegalArgumentException("depth must be >= 1"); }
+      this.fen = fen;
+      this.depth = depth;
+      this.checkpointFile = checkpointFile;
+      this.nbrThreads = nbrThreads;
+      this.out = out;
+      this.reportIntervalMs = reportIntervalMs;
+   }
+
+   /**
+    * Usage: PerftRunner &lt;depth&gt; &lt;checkpoint file&gt; [&lt;nbr threads&gt; [&lt;fen&gt;]]
+    * <p>
+    * The default position is 'posn6' from {@link Perft}.
+    */
+   public static void main(String[] args) {
+      if (args.length < 2) {
+         System.err.println("Usage: PerftRunner <depth> <checkpoint file> [<nbr threads> [<fen>]]");
+         System.exit(1);
+      }
+      int nbrThreads = args.length >= 3 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+      String fen = args.length >= 4 ? args[3] : "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10";
+      PerftRunner runner = new PerftRunner(fen, Integer.parseInt(args[0]), Paths.get(args[1]), nbrThreads, System.out, 10_000);
+      long nbrMoves = runner.run();
+      System.out.println(String.format(Locale.GERMANY, "%dply: %,d moves", runner.depth, nbrMoves));
+   }
+
+   /**
+    * Counts the leaf nodes, resuming from the checkpoint file if present.
+    *
+    * @return the number of leaf nodes
+    */
+   public long run() {
+      Position posn = Fen.decode(fen).getPosition();
+      Colour sideToMove = posn.getSideToMove();
+      Map<String, Long> completedUnits = readCheckpoint();
+      nbrUnitsResumed = 0;
+      nbrUnitsCounted = 0;
+
+      // collect the work units
+      List<String> unitKeys = new ArrayList<>();
+      List<Position> unitPosns = new ArrayList<>();
+      for (IMove rootMove : posn.findMoves(sideToMove)) {
+         Position posnAfterRootMove = posn.move(rootMove);
+         if (depth == 1) {
+            unitKeys.add(rootMove.toString());
+            unitPosns.add(posnAfterRootMove);
+            continue;
+         }
+         for (IMove reply : posnAfterRootMove.findMoves(sideToMove.opposite())) {
+            unitKeys.add(rootMove + " " + reply);
+            unitPosns.add(posnAfterRootMove.move(reply));
+         }
+      }
+
+      long totalMoves = 0;
+      long movesThisSession = 0;
+      int unitPly = Math.min(UNIT_PLY, depth);
+      long start = System.currentTimeMillis();
+      long lastReport = start;
+      boolean writeHeader = !Files.exists(checkpointFile) || checkpointFile.toFile().length() == 0;
+      try (BufferedWriter writer = Files.newBufferedWriter(checkpointFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+            StandardOpenOption.APPEND)) {
+         if (writeHeader) {
+            writer.write(FEN_HEADER + fen);
+            writer.newLine();
+            writer.write(DEPTH_HEADER + depth);
+            writer.newLine();
+            writer.flush();
+         }
+         for (int i = 0; i < unitKeys.size(); i++) {
+            Long nbrMoves = completedUnits.get(unitKeys.get(i));
+            if (nbrMoves != null) {
+               nbrUnitsResumed++;
+            } else {
+               nbrMoves = countUnit(unitPosns.get(i), unitPly % 2 == 0 ? sideToMove : sideToMove.opposite(), depth - unitPly);
+               nbrUnitsCounted++;
+               movesThisSession += nbrMoves;
+               writer.write(unitKeys.get(i) + "\t" + nbrMoves);
+               writer.newLine();
+               writer.flush();
+            }
+            totalMoves += nbrMoves;
+
+            long now = System.currentTimeMillis();
+            if (now - lastReport >= reportIntervalMs || i == unitKeys.size() - 1) {
+               lastReport = now;
+               reportProgress(i + 1, unitKeys.size(), totalMoves, movesThisSession, now - start);
+            }
+         }
+      } catch (IOException e) {
+         throw new UncheckedIOException("cannot write checkpoint file " + checkpointFile, e);
+      }
+      return totalMoves;
+   }
+
+   private long countUnit(Position unitPosn, Colour sideToMove, int remainingDepth) {
+      if (remainingDepth == 0) { return 1; }
+      return Perft.countMoves(Perft.findMovesMultiThreaded(unitPosn, sideToMove, remainingDepth, nbrThreads, Perft.DEFAULT_SPLIT_DEPTH,
+            Perft.NO_PROGRESS));
+   }
+
+   private void reportProgress(int unitsFinished, int nbrUnits, long totalMoves, long movesThisSession, long elapsedMs) {
+      int unitsRemaining = nbrUnits - unitsFinished;
+      // the ETA is estimated from the units counted in this session
+      String eta = "?";
+      if (nbrUnitsCounted > 0) { eta = formatDuration(elapsedMs * unitsRemaining / nbrUnitsCounted); }
+      out.println(String.format(Locale.GERMANY, "%,6d/%,6d units (%,d resumed), %,18d nodes, %,12.0f nodes/s, elapsed %s, ETA %s", unitsFinished,
+            nbrUnits, nbrUnitsResumed, totalMoves, (movesThisSession * 1000.0) / Math.max(1, elapsedMs), formatDuration(elapsedMs), eta));
+   }
+
+   private static String formatDuration(long ms) {
+      long secs = ms / 1000;
+      return String.format("%d:%02d:%02d", secs / 3600, (secs / 60) % 60, secs % 60);
+   }
+
+   /**
+    * Reads the results from the checkpoint file.
+    *
+    * An incomplete last line is removed from the file.
+    *
+    * @return the completed work units. Empty if the file does not exist.
+    * @throws IllegalStateException if the file was written for a different position or depth
+    */
+   Map<String, Long> readCheckpoint() {
+      Map<String, Long> completedUnits = new HashMap<>();
+      if (!Files.exists(checkpointFile)) { return completedUnits; }
+      String content;
+      try {
+         content = Files.readString(checkpointFile, StandardCharsets.UTF_8);
+      } catch (IOException e) {
+         throw new UncheckedIOException("cannot read checkpoint file " + checkpointFile, e);
+      }
+      // remove an incomplete last line, since new results will be appended
+      String completeContent = content.substring(0, content.lastIndexOf('\n') + 1);
+      if (completeContent.length() != content.length()) {
+         try {
+            Files.writeString(checkpointFile, completeContent, StandardCharsets.UTF_8);
+         } catch (IOException e) {
+            throw new UncheckedIOException("cannot write checkpoint file " + checkpointFile, e);
+         }
+      }
+      List<String> lines = completeContent.lines().toList();
+      if (lines.isEmpty()) { return completedUnits; }
+      if (lines.size() < 2 || !lines.get(0).equals(FEN_HEADER + fen) || !lines.get(1).equals(DEPTH_HEADER + depth)) {
+         throw new IllegalStateException(String.format("checkpoint file %s was not written for fen '%s' and depth %d", checkpointFile, fen, depth));
+      }
+      for (String line : lines.subList(2, lines.size())) {
+         int tab = line.indexOf('\t');
+         if (tab == -1) { throw new IllegalStateException(String.format("invalid line '%s' in checkpoint file %s", line, checkpointFile)); }
+         completedUnits.put(line.substring(0, tab), Long.parseLong(line.substring(tab + 1)));
+      }
+      return completedUnits;
+   }
+
+   /** @return the number of work units which were taken from the checkpoint file in the last run */
+   public int getNbrUnitsResumed() { return nbrUnitsResumed; }
+
+   /** @return the number of work units which were counted in the last run */
+   public int getNbrUnitsCounted() { return nbrUnitsCounted; }
+}
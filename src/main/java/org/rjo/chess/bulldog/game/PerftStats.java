@@ -0,0 +1,110 @@
+package org.rjo.chess.bulldog.game;
+
+import java.util.Locale;
+
+import org.rjo.chess.bulldog.move.PackedMove;
+
+/**
+ * Detailed statistics of a perft run: for each ply, the number of nodes, captures (incl. enpassant), enpassant captures, castles,
+ * promotions, checks, double checks and checkmates. The values for ply <code>n</code> correspond to the columns of the published perft
+ * tables for depth <code>n</code>.
+ * <p>
+ * Not thread-safe. Each thread collects its own statistics, which are combined at the end with {@link #add(PerftStats)}.
+ *
+ * @author rich
+ * @see "https://www.chessprogramming.org/Perft_Results"
+ */
+public class PerftStats {
+
+   private final long[] nodes;
+   private final long[] captures;
+   private final long[] enpassants;
+   private final long[] castles;
+   private final long[] promotions;
+   private final long[] checks;
+   private final long[] doubleChecks;
+   private final long[] checkmates;
+
+   /**
+    * @param maxDepth the maximum depth (number of plies)
+    */
+   public PerftStats(int maxDepth) {
+      nodes = new long[maxDepth + 1];
+      captures = new long[maxDepth + 1];
+      enpassants = new long[maxDepth + 1];
+      castles = new long[maxDepth + 1];
+      promotions = new long[maxDepth + 1];
+      checks = new long[maxDepth + 1];
+      doubleChecks = new long[maxDepth + 1];
+      checkmates = new long[maxDepth + 1];
+   }
+
+   /**
+    * Records a move.
+    *
+    * @param ply           ply of the move (the moves from the start position are at ply 1)
+    * @param move          the move in {@link PackedMove} format
+    * @param posnAfterMove the position after the move has been made
+    */
+   public void record(int ply, int move, Position posnAfterMove) {
+      nodes[ply]++;
+      if (PackedMove.isCapture(move) || PackedMove.isEnpassant(move)) { captures[ply]++; }
+      if (PackedMove.isEnpassant(move)) { enpassants[ply]++; }
+      if (PackedMove.isKingssideCastling(move) || PackedMove.isQueenssideCastling(move)) { castles[ply]++; }
+      if (PackedMove.isPromotion(move)) { promotions[ply]++; }
+      if (posnAfterMove.isKingInCheck()) {
+         checks[ply]++;
+         if (posnAfterMove.getCheckSquares().size() > 1) { doubleChecks[ply]++; }
+         if (posnAfterMove.countLegalMoves(posnAfterMove.getSideToMove()) == 0) { checkmates[ply]++; }
+      }
+   }
+
+   /**
+    * Adds the values of 'other' to this object.
+    *
+    * @param other statistics for the same or a lower depth
+    */
+   public void add(PerftStats other) {
+      for (int ply = 0; ply < other.nodes.length; ply++) {
+         nodes[ply] += other.nodes[ply];
+         captures[ply] += other.captures[ply];
+         enpassants[ply] += other.enpassants[ply];
+         castles[ply] += other.castles[ply];
+         promotions[ply] += other.promotions[ply];
+         checks[ply] += other.checks[ply];
+         doubleChecks[ply] += other.doubleChecks[ply];
+         checkmates[ply] += other.checkmates[ply];
+      }
+   }
+
+   /** @return the maximum depth */
+   public int getMaxDepth() { return nodes.length - 1; }
+
+   public long getNodes(int ply) { return nodes[ply]; }
+
+   public long getCaptures(int ply) { return captures[ply]; }
+
+   public long getEnpassants(int ply) { return enpassants[ply]; }
+
+   public long getCastles(int ply) { return castles[ply]; }
+
+   public long getPromotions(int ply) { return promotions[ply]; }
+
+   public long getChecks(int ply) { return checks[ply]; }
+
+   public long getDoubleChecks(int ply) { return doubleChecks[ply]; }
+
+   public long getCheckmates(int ply) { return checkmates[ply]; }
+
+   @Override
+   public String toString() {
+      StringBuilder sb = new StringBuilder(100 * nodes.length);
+      sb.append(String.format("%5s %16s %14s %10s %12s %12s %12s %10s %12s%n", "depth", "nodes", "captures", "e.p.", "castles", "promotions",
+            "checks", "dbl checks", "checkmates"));
+      for (int ply = 1; ply < nodes.length; ply++) {
+         sb.append(String.format(Locale.GERMANY, "%5d %,16d %,14d %,10d %,12d %,12d %,12d %,10d %,12d%n", ply, nodes[ply], captures[ply],
+               enpassants[ply], castles[ply], promotions[ply], checks[ply], doubleChecks[ply], checkmates[ply]));
+      }
+      return sb.toString();
+   }
+}
@@ -0,0 +1,250 @@
+package org.rjo.chess.bulldog.game;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Stream;
+
+/**
+ * Runs the perft tests stored in an EPD file (e.g. the standard 'perftsuite.epd') and validates the results. Each line has the format
+ *
+ * <pre>
+ * &lt;fen&gt; ;D1 &lt;nbr of moves&gt; ;D2 &lt;nbr of moves&gt; ...
+ * </pre>
+ *
+ * Empty lines and lines starting with '#' are ignored. The positions are processed in parallel on the shared {@link Perft} pool, each
+ * position by one thread. The timings (and therefore the throughput in moves/ms) are measured per position and depth, after a short warmup.
+ * <p>
+ * Usage: PerftSuiteRunner &lt;epd file&gt; [options]
+ * <ul>
+ * <li>-depth &lt;n&gt;: maximum depth (default: all depths in the file)</li>
+ * <li>-threads &lt;n&gt;: number of threads (default: nbr of processors)</li>
+ * <li>-csv &lt;file&gt;, -json &lt;file&gt;: write the results in CSV / JSON format</li>
+ * <li>-baseline &lt;file&gt;: fail if the throughput is lower than the value (moves/ms) stored in this file, minus the tolerance</li>
+ * <li>-tolerance &lt;percent&gt;: tolerance when comparing with the baseline (default 10)</li>
+ * <li>-record-baseline: store the current throughput in the baseline file</li>
+ * </ul>
+ * The exit code is 1 if a perft result is wrong or the throughput is too low.
+ *
+ * @author rich
+ * @see "https://www.chessprogramming.org/Perft_Results"
+ */
+public class PerftSuiteRunner {
+
+   private static final double DEFAULT_TOLERANCE_PERCENT = 10;
+   /** position and depth of the warmup run, so that the class initialisation does not count towards the timings */
+   private static final String WARMUP_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+   private static final int WARMUP_DEPTH = 4;
+
+   /**
+    * A line of the EPD file.
+    *
+    * @param lineNbr  line number in the file (starting at 1)
+    * @param fen      the position
+    * @param expected expected number of moves for depth 1, 2, ...
+    */
+   public static record EpdEntry(int lineNbr, String fen, long[] expected) {
+   }
+
+   /**
+    * Result of a perft for one position and depth.
+    */
+   public static record PositionResult(int lineNbr, String fen, int depth, long expected, long actual, long timeNanos) {
+      public boolean isOk() { return expected == actual; }
+
+      public double movesPerMs() {
+         return actual * 1_000_000.0 / Math.max(1, timeNanos);
+      }
+   }
+
+   /**
+    * Result of the complete suite.
+    *
+    * @param results   the results for each position and depth, in the order of the EPD file
+    * @param wallNanos elapsed time for the complete suite
+    */
+   public static record SuiteResult(List<PositionResult> results, long wallNanos) {
+
+      public boolean allOk() {
+         return results.stream().allMatch(PositionResult::isOk);
+      }
+
+      public long totalMoves() {
+         return results.stream().mapToLong(PositionResult::actual).sum();
+      }
+
+      /** @return the throughput of a single thread, i.e. the total number of moves divided by the sum of the time of each position */
+      public double movesPerMs() {
+         long totalNanos = results.stream().mapToLong(PositionResult::timeNanos).sum();
+         return totalMoves() * 1_000_000.0 / Math.max(1, totalNanos);
+      }
+
+      public String toCsv() {
+         StringBuilder sb = new StringBuilder(100 * (results.size() + 1));
+         sb.append("line,fen,depth,expected,actual,ok,timeMs,movesPerMs").append(System.lineSeparator());
+         for (PositionResult r : results) {
+            sb.append(String.format(Locale.ROOT, "%d,\"%s\",%d,%d,%d,%b,%.3f,%.1f%n", r.lineNbr(), r.fen(), r.depth(), r.expected(), r.actual(),
+                  r.isOk(), r.timeNanos() / 1_000_000.0, r.movesPerMs()));
+         }
+         sb.append(String.format(Locale.ROOT, "total,,,,%d,%b,%.3f,%.1f%n", totalMoves(), allOk(), wallNanos / 1_000_000.0, movesPerMs()));
+         return sb.toString();
+      }
+
+      public String toJson() {
+         StringBuilder sb = new StringBuilder(150 * (results.size() + 1));
+         sb.append("{").append(System.lineSeparator());
+         sb.append(String.format(Locale.ROOT, "  \"totalMoves\": %d,%n  \"ok\": %b,%n  \"wallTimeMs\": %.3f,%n  \"movesPerMs\": %.1f,%n", totalMoves(),
+               allOk(), wallNanos / 1_000_000.0, movesPerMs()));
+         sb.append("  \"results\": [").append(System.lineSeparator());
+         for (int i = 0; i < results.size(); i++) {
+            PositionResult r = results.get(i);
+            sb.append(String.format(Locale.ROOT,
+                  "    { \"line\": %d, \"fen\": \"%s\", \"depth\": %d, \"expected\": %d, \"actual\": %d, \"ok\": %b, \"timeMs\": %.3f, \"movesPerMs\": %.1f }",
+                  r.lineNbr(), r.fen().replace("\\", "\\\\").replace("\"", "\\\""), r.depth(), r.expected(), r.actual(), r.isOk(),
+                  r.timeNanos() / 1_000_000.0, r.movesPerMs()));
+            if (i < results.size() - 1) { sb.append(','); }
+            sb.append(System.lineSeparator());
+         }
+         sb.append("  ]").append(System.lineSeparator()).append("}").append(System.lineSeparator());
+         return sb.toString();
+      }
+   }
+
+   private PerftSuiteRunner() {
+   }
+
+   public static void main(String[] args) throws IOException {
+      if (args.length < 1) {
+         System.err.println(
+               "Usage: PerftSuiteRunner <epd file> [-depth <n>] [-threads <n>] [-csv <file>] [-json <file>] [-baseline <file> [-tolerance <percent>] [-record-baseline]]");
+         System.exit(1);
+      }
+      Path epdFile = Paths.get(args[0]);
+      int maxDepth = Integer.MAX_VALUE;
+      int nbrThreads = Runtime.getRuntime().availableProcessors();
+      Path csvFile = null;
+      Path jsonFile = null;
+      Path baselineFile = null;
+      double tolerance = DEFAULT_TOLERANCE_PERCENT;
+      boolean recordBaseline = false;
+      for (int i = 1; i < args.length; i++) {
+         switch (args[i]) {
+         case "-depth" -> maxDepth = Integer.parseInt(args[++i]);
+         case "-threads" -> nbrThreads = Integer.parseInt(args[++i]);
+         case "-csv" -> csvFile = Paths.get(args[++i]);
+         case "-json" -> jsonFile = Paths.get(args[++i]);
+         case "-baseline" -> baselineFile = Paths.get(args[++i]);
+         case "-tolerance" -> tolerance = Double.parseDouble(args[++i]);
+         case "-record-baseline" -> recordBaseline = true;
+         default -> throw new IllegalArgumentException("unknown option: " + args[i]);
+         }
+      }
+
+      SuiteResult suiteResult = run(epdFile, maxDepth, nbrThreads, System.out);
+      if (csvFile != null) { Files.writeString(csvFile, suiteResult.toCsv(), StandardCharsets.UTF_8); }
+      if (jsonFile != null) { Files.writeString(jsonFile, suiteResult.toJson(), StandardCharsets.UTF_8); }
+
+      boolean ok = suiteResult.allOk();
+      if (!ok) { System.out.println("ERROR: wrong number of moves"); }
+      if (baselineFile != null) {
+         if (recordBaseline) {
+            Files.writeString(baselineFile, String.format(Locale.ROOT, "%.1f%n", suiteResult.movesPerMs()), StandardCharsets.UTF_8);
+            System.out.println("baseline stored in " + baselineFile);
+         } else {
+            double baseline = Double.parseDouble(Files.readString(baselineFile, StandardCharsets.UTF_8).trim());
+            if (!meetsBaseline(suiteResult, baseline, tolerance)) {
+               System.out.println(String.format(Locale.ROOT, "ERROR: throughput %.1f moves/ms is below the baseline %.1f moves/ms (tolerance %.1f%%)",
+                     suiteResult.movesPerMs(), baseline, tolerance));
+               ok = false;
+            }
+         }
+      }
+      System.exit(ok ? 0 : 1);
+   }
+
+   /**
+    * Runs all positions of the EPD file.
+    *
+    * @param epdFile    the EPD file
+    * @param maxDepth   maximum depth
+    * @param nbrThreads number of threads
+    * @param out        the result of each position will be printed here
+    * @return the results
+    * @throws IOException if the file cannot be read
+    */
+   public static SuiteResult run(Path epdFile, int maxDepth, int nbrThreads, PrintStream out) throws IOException {
+      ForkJoinPool pool = Perft.getPool(nbrThreads);
+      Position warmupPosn = Fen.decode(WARMUP_FEN).getPosition();
+      Perft.findMovesSingleThreaded(warmupPosn, warmupPosn.getSideToMove(), WARMUP_DEPTH);
+      long start = System.nanoTime();
+      List<ForkJoinTask<List<PositionResult>>> tasks = new ArrayList<>();
+      try (Stream<String> lines = Files.lines(epdFile, StandardCharsets.UTF_8)) {
+         int lineNbr = 0;
+         for (String line : (Iterable<String>) lines::iterator) {
+            lineNbr++;
+            if (line.isBlank() || line.startsWith("#")) { continue; }
+            EpdEntry entry = parse(line, lineNbr);
+            tasks.add(pool.submit(() -> runPosition(entry, maxDepth)));
+         }
+      }
+      List<PositionResult> results = new ArrayList<>();
+      for (ForkJoinTask<List<PositionResult>> task : tasks) {
+         for (PositionResult r : task.join()) {
+            out.println(String.format(Locale.GERMANY, "%4d %-75s %2dply: %,14d moves (%,8d ms) (%8.1f moves/ms)%s", r.lineNbr(), r.fen(), r.depth(),
+                  r.actual(), r.timeNanos() / 1_000_000, r.movesPerMs(), r.isOk() ? "" : String.format(" ERROR: expected %,d", r.expected())));
+            results.add(r);
+         }
+      }
+      SuiteResult suiteResult = new SuiteResult(results, System.nanoTime() - start);
+      out.println(String.format(Locale.GERMANY, "total: %,d moves (%,d ms) (%.1f moves/ms per thread)", suiteResult.totalMoves(),
+            suiteResult.wallNanos() / 1_000_000, suiteResult.movesPerMs()));
+      return suiteResult;
+   }
+
+   /**
+    * @param tolerancePercent the throughput may be this much lower than the baseline
+    * @return true if the throughput of the suite is not lower than the baseline (minus the tolerance)
+    */
+   public static boolean meetsBaseline(SuiteResult suiteResult, double baselineMovesPerMs, double tolerancePercent) {
+      return suiteResult.movesPerMs() >= baselineMovesPerMs * (1 - tolerancePercent / 100);
+   }
+
+   private static List<PositionResult> runPosition(EpdEntry entry, int maxDepth) {
+      List<PositionResult> results = new ArrayList<>();
+      Position posn = Fen.decode(entry.fen()).getPosition();
+      for (int depth = 1; depth <= Math.min(maxDepth, entry.expected().length); depth++) {
+         long start = System.nanoTime();
+         long nbrMoves = Perft.countMoves(Perft.findMovesSingleThreaded(posn, posn.getSideToMove(), depth));
+         results.add(new PositionResult(entry.lineNbr(), entry.fen(), depth, entry.expected()[depth - 1], nbrMoves, System.nanoTime() - start));
+      }
+      return results;
+   }
+
+   /**
+    * Parses a line of an EPD file. The depths must be given in ascending order, starting at 1.
+    *
+    * @param line    the line
+    * @param lineNbr line number (for error messages)
+    * @return the entry
+    */
+   static EpdEntry parse(String line, int lineNbr) {
+      String[] fields = line.split(";");
+      long[] expected = new long[fields.length - 1];
+      for (int i = 1; i < fields.length; i++) {
+         String[] tokens = fields[i].trim().split("\\s+");
+         if (tokens.length != 2 || !tokens[0].equals("D" + i)) {
+            throw new IllegalArgumentException(String.format("line %d: expected 'D%d <nbr>' but got '%s'", lineNbr, i, fields[i].trim()));
+         }
+         expected[i - 1] = Long.parseLong(tokens[1]);
+      }
+      return new EpdEntry(lineNbr, fields[0].trim(), expected);
+   }
+}
@@ -0,0 +1,78 @@
+package org.rjo.chess.bulldog.game;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Worker of a distributed perft: connects to a {@link PerftCoordinator}, counts the work units it receives using the multi-threaded
+ * {@link Perft} and returns the results. Stops when the coordinator has no more work units.
+ *
+ * @author rich
+ */
+public class PerftWorker {
+
+   private final String host;
+   private final int port;
+   private final int nbrThreads;
+
+   /**
+    * @param host       host of the coordinator
+    * @param port       port of the coordinator
+    * @param nbrThreads number of threads
+    */
+   public PerftWorker(String host, int port, int nbrThreads) {
+      this.host = host;
+      this.port = port;
+      this.nbrThreads = nbrThreads;
+   }
+
+   /**
+    * Usage: PerftWorker &lt;port&gt; [&lt;nbr threads&gt; [&lt;host&gt;]]
+    */
+   public static void main(String[] args) throws IOException {
+      if (args.length < 1) {
+         System.err.println("Usage: PerftWorker <port> [<nbr threads> [<host>]]");
+         System.exit(1);
+      }
+      int nbrThreads = args.length >= 2 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+      String host = args.length >= 3 ? args[2] : "localhost";
+      int nbrUnits = new PerftWorker(host, Integer.parseInt(args[0]), nbrThreads).run();
+      System.out.println(String.format("finished after %d work units", nbrUnits));
+   }
+
+   /**
+    * Processes work units until the coordinator has no more.
+    *
+    * @return the number of work units processed
+    * @throws IOException if the connection fails
+    */
+   public int run() throws IOException {
+      int nbrUnits = 0;
+      try (Socket socket = new Socket(host, port);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8)) {
+         out.println(PerftCoordinator.GET);
+         String line;
+         while ((line = in.readLine()) != null && !PerftCoordinator.DONE.equals(line)) {
+            // UNIT <id> <depth> <fen>
+            String[] tokens = line.split(" ", 4);
+            if (tokens.length != 4 || !PerftCoordinator.UNIT.equals(tokens[0])) { throw new IllegalStateException("unexpected message: " + line); }
+            long nbrMoves = count(tokens[3], Integer.parseInt(tokens[2]));
+            out.println(PerftCoordinator.RESULT + " " + tokens[1] + " " + nbrMoves);
+            nbrUnits++;
+         }
+      }
+      return nbrUnits;
+   }
+
+   private long count(String fen, int depth) {
+      if (depth == 0) { return 1; }
+      Position posn = Fen.decode(fen).getPosition();
+      return Perft.countMoves(
+            Perft.findMovesMultiThreaded(posn, posn.getSideToMove(), depth, nbrThreads, Perft.DEFAULT_SPLIT_DEPTH, Perft.NO_PROGRESS));
+   }
+}
@@ -11,6 +11,8 @@ import org.rjo.chess.bulldog.board.Ray;
 import org.rjo.chess.bulldog.move.IMove;
 import org.rjo.chess.bulldog.move.MoveGenerator;
 import org.rjo.chess.bulldog.move.MoveGeneratorI;
+import org.rjo.chess.bulldog.move.MoveList;
+import org.rjo.chess.bulldog.move.PackedMove;
 import org.rjo.chess.bulldog.piece.Colour;
 import org.rjo.chess.bulldog.piece.Piece;
 import org.rjo.chess.bulldog.piece.Pieces;
@@ -90,8 +92,11 @@ public class Position {
 	 * Stores information about a piece (type, colour) on a particular square.
 	 */
 	/* package */ byte[] board;
-	// stores a bitset of white pieces and a bitset of black pieces
-	// /* package */ BitSetUnifier[] piecesBitset;
+	// bitboards of the white and black pieces (bit 0 == a8). Kept in step with 'board'.
+	private long whitePieces;
+	private long blackPieces;
+	// Zobrist key of this position, updated incrementally. See Zobrist
+	private long zobristKey;
 
 	// keeps track on who can still castle
 	// 1st dimension: W/B, 2nd dimension: 0 - king's side, 1 - queen's side
@@ -109,6 +114,28 @@ public class Position {
 	private Position previousPosn; // stores the previous position
 	private IMove currentMove; // stores the move made from the previous position to get to this position
 
+	/**
+	 * Stores the information required to undo a move made with
+	 * {@link Position#makeMove(int)}.
+	 */
+	private static class UndoInfo {
+		private int move;
+		private byte capturedPiece;
+		private boolean[][] castlingRights;
+		private int[] kingsSquare;
+		private Square enpassantSquare;
+		private boolean kingInCheck;
+		private List<PieceSquareInfo> checkSquares;
+		private long whitePieces;
+		private long blackPieces;
+		private long zobristKey;
+	}
+
+	// undo stack for makeMove/unmakeMove, one entry per ply. Allocated on first
+	// use, not copied by the copy constructor
+	private UndoInfo[] undoStack;
+	private int undoStackSize;
+
 	// mainly for tests
 	public Position(Square whiteKingsSquare, Square blackKingsSquare) {
 		this(new boolean[2][2], whiteKingsSquare, blackKingsSquare);
@@ -127,14 +154,12 @@ public class Position {
 
 	public Position(boolean[][] castlingRights) {
 		this.board = new byte[64];
-		// this.piecesBitset = new BitSetUnifier[2];
-		// this.piecesBitset[0] = BitSetFactory.createBitSet(64);
-		// this.piecesBitset[1] = BitSetFactory.createBitSet(64);
 		this.kingsSquare = new int[] { -1, -1 };
 		for (int i = 0; i < 64; i++) {
 			board[i] = UNOCCUPIED_SQUARE;
 		}
 		this.castlingRights = castlingRights;
+		this.zobristKey = Zobrist.castlingKey(castlingRights);
 		setSideToMove(Colour.WHITE);
 	}
 
@@ -155,15 +180,11 @@ public class Position {
 		this.kingInCheck = prevPosn.kingInCheck;
 		this.checkSquares = prevPosn.checkSquares;
 		this.board = prevPosn.board.clone();
+		this.whitePieces = prevPosn.whitePieces;
+		this.blackPieces = prevPosn.blackPieces;
+		this.zobristKey = prevPosn.zobristKey;
 		this.previousPosn = prevPosn;
 		this.currentMove = move;
-		// this.piecesBitset = new BitSetUnifier[2];
-		// piecesBitset[0] =
-		// BitSetFactory.createBitSet(prevPosn.piecesBitset[0].toLongArray());//
-		// (BitSetUnifier) prevPosn.piecesBitset[0].clone();
-		// piecesBitset[1] =
-		// BitSetFactory.createBitSet(prevPosn.piecesBitset[1].toLongArray());//
-		// (BitSetUnifier) prevPosn.piecesBitset[1].clone();
 	}
 
 	/**
@@ -254,7 +275,12 @@ public class Position {
 			kingsSquare[colour.ordinal()] = square;
 		}
 		board[square] = piece;
-		// piecesBitset[colour.ordinal()].set(square);
+		zobristKey ^= Zobrist.pieceKey(piece, square);
+		if (colour == Colour.WHITE) {
+			whitePieces |= 1L << square;
+		} else {
+			blackPieces |= 1L << square;
+		}
 	}
 
 	// convert from Piece to byte
@@ -317,6 +343,7 @@ public class Position {
 	}
 
 	public void setEnpassantSquare(Square sq) {
+		zobristKey ^= Zobrist.enpassantKey(this.enpassantSquare) ^ Zobrist.enpassantKey(sq);
 		this.enpassantSquare = sq;
 	}
 
@@ -328,26 +355,70 @@ public class Position {
 		return kingsSquare[col.ordinal()];
 	}
 
-	// public BitSetUnifier getPiecesBitset(Colour colour) {
-	// return piecesBitset[colour.ordinal()];
-	// }
-	//
-	// public BitSetUnifier getPiecesBitset(int colour) {
-	// return piecesBitset[colour];
-	// }
+	/**
+	 * @param colour required colour
+	 * @return bitboard of the squares occupied by pieces of the given colour
+	 */
+	public long getPiecesBitboard(Colour colour) {
+		return colour == Colour.WHITE ? whitePieces : blackPieces;
+	}
+
+	/** @return bitboard of all occupied squares */
+	public long getOccupiedBitboard() {
+		return whitePieces | blackPieces;
+	}
 
 	public Colour getSideToMove() {
 		return sideToMove;
 	}
 
 	public void setSideToMove(Colour sideToMove) {
+		zobristKey ^= Zobrist.sideToMoveKey(this.sideToMove) ^ Zobrist.sideToMoveKey(sideToMove);
 		this.sideToMove = sideToMove;
 	}
 
 	public void setCastlingRights(boolean[][] castlingRights) {
+		zobristKey ^= Zobrist.castlingKey(this.castlingRights) ^ Zobrist.castlingKey(castlingRights);
 		this.castlingRights = castlingRights;
 	}
 
+	/**
+	 * @return the Zobrist key of this position
+	 */
+	public long getZobristKey() {
+		return zobristKey;
+	}
+
+	/**
+	 * Calculates the Zobrist key from scratch. Called after setting up a position
+	 * (although the key is also kept up to date by the setters).
+	 */
+	public void initialiseZobristKey() {
+		this.zobristKey = Zobrist.calculateKey(this);
+	}
+
+	/**
+	 * The hash code is derived from the Zobrist key.
+	 */
+	@Override
+	public int hashCode() {
+		return (int) (zobristKey ^ (zobristKey >>> 32));
+	}
+
+	/**
+	 * Two positions are equal if their Zobrist keys are equal.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof Position)) {
+			return false;
+		}
+		return zobristKey == ((Position) obj).zobristKey;
+	}
+
 	// displays the board (always from white POV, a1 in bottom LHS)
 	@Override
 	public String toString() {
@@ -376,7 +447,7 @@ public class Position {
 			case 7 -> sb.append("   ").append(sideToMove).append(" to move");
 			case 6 -> sb.append("   castlingRights: ").append(castlingRightsToString());
 			case 5 -> sb.append("   enpassant square: ").append(enpassantSquare);
-			case 4 -> sb.append("   hash (zobrist): ").append(hashCode());
+			case 4 -> sb.append("   hash (zobrist): ").append(Long.toHexString(zobristKey));
 			case 3 -> {
 				if (kingInCheck) {
 					sb.append("   king in check: ").append(checkSquares);
@@ -395,85 +466,255 @@ public class Position {
 
 	public Position move(IMove move) {
 		Position newPosn = new Position(this, move); // clone current position
+		newPosn.processMove(move.toPackedMove());
+		List<PieceSquareInfo> checkSquares = move.getCheckSquares();
+		if (move.isCheck() && checkSquares.isEmpty()) {
+			// e.g. move was decoded from the packed format
+			newPosn.updateCheckState(move.toPackedMove());
+		} else {
+			newPosn.setKingInCheck(checkSquares);
+		}
+		return newPosn;
+	}
+
+	/**
+	 * Makes the given move, returning a new position.
+	 * 
+	 * Since the packed format does not store the squares of the checking pieces,
+	 * these will be calculated here if the move is flagged as a check.
+	 * 
+	 * @param move the move, in {@link PackedMove} format
+	 * @return the new position
+	 */
+	public Position move(int move) {
+		Position newPosn = new Position(this, null); // clone current position
 		newPosn.processMove(move);
+		newPosn.updateCheckState(move);
 		return newPosn;
 	}
 
-	// process the given move, updating internal structures
-	private void processMove(IMove move) {
+	/**
+	 * Makes the given move <b>in this position</b>. The move can be taken back
+	 * with {@link #unmakeMove()}.
+	 * 
+	 * Unlike {@link #move(int)}, no new position is created. Moves made with this
+	 * method do not update 'previousPosn' or 'currentMove'.
+	 * 
+	 * @param move the move, in {@link PackedMove} format
+	 */
+	public void makeMove(int move) {
+		UndoInfo undo = pushUndoInfo(move);
+		undo.capturedPiece = board[PackedMove.getTarget(move)]; // is empty for enpassant
+
+		processMove(move);
+		updateCheckState(move);
+	}
+
+	/**
+	 * Makes a 'null move' <b>in this position</b>, i.e. the side to move passes.
+	 * Only the side to move and the enpassant square change. Must be taken back
+	 * with {@link #unmakeNullMove()}.
+	 * 
+	 * Used by the search for null-move pruning. Must not be called if the king is
+	 * in check.
+	 */
+	public void makeNullMove() {
+		if (kingInCheck) {
+			throw new IllegalStateException("cannot make a null move when in check");
+		}
+		pushUndoInfo(PackedMove.NO_MOVE);
+		setEnpassantSquare(null);
+		setSideToMove(sideToMove.opposite());
+		// the side which passed was not in check, so neither is the side now to move
+		this.checkSquares = null;
+	}
+
+	/**
+	 * Takes back the null move made by {@link #makeNullMove()}.
+	 */
+	public void unmakeNullMove() {
+		if (undoStackSize == 0 || undoStack[undoStackSize - 1].move != PackedMove.NO_MOVE) {
+			throw new IllegalStateException("no null move to unmake");
+		}
+		UndoInfo undo = undoStack[--undoStackSize];
+		this.sideToMove = this.sideToMove.opposite();
+		this.enpassantSquare = undo.enpassantSquare;
+		this.kingInCheck = undo.kingInCheck;
+		this.checkSquares = undo.checkSquares;
+		this.zobristKey = undo.zobristKey;
+		undo.checkSquares = null;
+	}
+
+	// stores the current state on the undo stack, before 'move' is made
+	private UndoInfo pushUndoInfo(int move) {
+		if (undoStack == null) {
+			undoStack = new UndoInfo[32];
+		} else if (undoStackSize == undoStack.length) {
+			undoStack = Arrays.copyOf(undoStack, undoStack.length * 2);
+		}
+		UndoInfo undo = undoStack[undoStackSize];
+		if (undo == null) {
+			undo = new UndoInfo();
+			undoStack[undoStackSize] = undo;
+		}
+		undoStackSize++;
+		undo.move = move;
+		undo.castlingRights = castlingRights; // castling rights and kingsSquare are copied on write
+		undo.kingsSquare = kingsSquare;
+		undo.enpassantSquare = enpassantSquare;
+		undo.kingInCheck = kingInCheck;
+		undo.checkSquares = checkSquares;
+		undo.whitePieces = whitePieces;
+		undo.blackPieces = blackPieces;
+		undo.zobristKey = zobristKey;
+		return undo;
+	}
+
+	/**
+	 * Takes back the last move made by {@link #makeMove(int)}.
+	 */
+	public void unmakeMove() {
+		if (undoStackSize == 0) {
+			throw new IllegalStateException("no move to unmake");
+		}
+		if (undoStack[undoStackSize - 1].move == PackedMove.NO_MOVE) {
+			throw new IllegalStateException("last move was a null move, use unmakeNullMove");
+		}
+		UndoInfo undo = undoStack[--undoStackSize];
+		int move = undo.move;
+		int origin = PackedMove.getOrigin(move);
+		int target = PackedMove.getTarget(move);
+		this.sideToMove = this.sideToMove.opposite();
+
+		byte movedPiece = board[target];
+		board[origin] = PackedMove.isPromotion(move) ? Pieces.generatePawn(sideToMove) : movedPiece;
+		board[target] = undo.capturedPiece;
+		if (PackedMove.isEnpassant(move)) {
+			board[PackedMove.getSquareOfPawnCapturedEnpassant(move)] = Pieces.generatePawn(sideToMove.opposite());
+		}
+		boolean kingsSideCastling = PackedMove.isKingssideCastling(move);
+		if (kingsSideCastling || PackedMove.isQueenssideCastling(move)) {
+			int sideOfBoard = kingsSideCastling ? 0 : 1;
+			board[MoveGenerator.rooksCastlingSquareIndex[sideToMove.ordinal()][sideOfBoard]] = board[MoveGenerator.rooksSquareAfterCastling[sideToMove
+					.ordinal()][sideOfBoard]];
+			board[MoveGenerator.rooksSquareAfterCastling[sideToMove.ordinal()][sideOfBoard]] = UNOCCUPIED_SQUARE;
+		}
+
+		this.castlingRights = undo.castlingRights;
+		this.kingsSquare = undo.kingsSquare;
+		this.enpassantSquare = undo.enpassantSquare;
+		this.kingInCheck = undo.kingInCheck;
+		this.checkSquares = undo.checkSquares;
+		this.whitePieces = undo.whitePieces;
+		this.blackPieces = undo.blackPieces;
+		this.zobristKey = undo.zobristKey;
+		undo.checkSquares = null; // don't hang on to garbage
+	}
+
+	// sets the check state after 'move' has been processed
+	private void updateCheckState(int move) {
+		if (PackedMove.isCheck(move)) {
+			setKingInCheck(isKingInCheck(kingsSquare[sideToMove.ordinal()], sideToMove));
+		} else {
+			setKingInCheck((List<PieceSquareInfo>) null);
+		}
+	}
+
+	// process the given move, updating internal structures (apart from the check state)
+	private void processMove(int move) {
+		final int origin = PackedMove.getOrigin(move);
+		final int target = PackedMove.getTarget(move);
 		int sideToMoveOrdinal = this.sideToMove.ordinal();
-		byte movingPiece = pieceAt(move.getOrigin());
+		byte movingPiece = pieceAt(origin);
 
 		if (TEST_IF_VALID) {
-			if (move.isCapture()) {
-				if (move.isEnpassant()) {
-					if (!squareIsEmpty(move.getTarget())) {
-						throw new IllegalStateException(
-								String.format("invalid enpassant move %s, target square is not empty", move));
-					} else if (squareIsEmpty(move.getSquareOfPawnCapturedEnpassant())) {
+			if (PackedMove.isCapture(move)) {
+				if (PackedMove.isEnpassant(move)) {
+					if (!squareIsEmpty(target)) {
+						throw new IllegalStateException(String.format(
+								"invalid enpassant move %s, target square is not empty", PackedMove.toString(move)));
+					} else if (squareIsEmpty(PackedMove.getSquareOfPawnCapturedEnpassant(move))) {
 						throw new IllegalStateException(String.format("invalid enpassant move %s, square %s is empty",
-								move, Square.toSquare(move.getSquareOfPawnCapturedEnpassant())));
+								PackedMove.toString(move),
+								Square.toSquare(PackedMove.getSquareOfPawnCapturedEnpassant(move))));
 					}
-				} else if (squareIsEmpty(move.getTarget())) {
-					throw new IllegalStateException(
-							String.format("invalid capture move %s, target square is empty", move));
+				} else if (squareIsEmpty(target)) {
+					throw new IllegalStateException(String.format("invalid capture move %s, target square is empty",
+							PackedMove.toString(move)));
 				}
 			}
-			if (!move.isCapture() && !squareIsEmpty(move.getTarget())) {
+			if (!PackedMove.isCapture(move) && !squareIsEmpty(target)) {
 				throw new IllegalStateException(
-						String.format("invalid non-capture move %s, target square is occupied with: %s %s", move,
-								colourOfPieceAt(move.getTarget()), pieceAt(move.getTarget())));
+						String.format("invalid non-capture move %s, target square is occupied with: %s %s",
+								PackedMove.toString(move), colourOfPieceAt(target), pieceAt(target)));
 			}
-			if (Pieces.colourOf(pieceAt(move.getOrigin())) != this.sideToMove) {
-				throw new IllegalStateException(String.format("invalid move %s, sideToMove is %s", move, sideToMove));
+			if (Pieces.colourOf(pieceAt(origin)) != this.sideToMove) {
+				throw new IllegalStateException(String.format("invalid move %s, sideToMove is %s",
+						PackedMove.toString(move), sideToMove));
 			}
 		}
 
 		// remove piece at move.origin, place piece at move.target (implicitly removing
 		// piece at move.target)
-		board[move.getOrigin()] = UNOCCUPIED_SQUARE;
-		board[move.getTarget()] = move.isPromotion() ? move.getPromotedPiece() : movingPiece;
-		// piecesBitset[sideToMoveOrdinal].clear(move.getOrigin());
-		// piecesBitset[sideToMoveOrdinal].set(move.getTarget());
-		// if (move.isCapture()) {
-		// piecesBitset[sideToMove.opposite().ordinal()].clear(move.getTarget()); }
-		if (move.isEnpassant()) {
-			board[move.getSquareOfPawnCapturedEnpassant()] = UNOCCUPIED_SQUARE;
-			// piecesBitset[sideToMove.opposite().ordinal()].clear(move.getSquareOfPawnCapturedEnpassant());
+		long key = zobristKey ^ Zobrist.pieceKey(movingPiece, origin);
+		if (board[target] != UNOCCUPIED_SQUARE) {
+			key ^= Zobrist.pieceKey(board[target], target);
+		}
+		board[origin] = UNOCCUPIED_SQUARE;
+		board[target] = PackedMove.isPromotion(move) ? PackedMove.getPromotedPiece(move) : movingPiece;
+		key ^= Zobrist.pieceKey(board[target], target);
+		long fromTo = (1L << origin) | (1L << target);
+		long opponentsPiecesRemoved = 1L << target;
+		if (PackedMove.isEnpassant(move)) {
+			int squareOfPawnCapturedEnpassant = PackedMove.getSquareOfPawnCapturedEnpassant(move);
+			key ^= Zobrist.pieceKey(board[squareOfPawnCapturedEnpassant], squareOfPawnCapturedEnpassant);
+			board[squareOfPawnCapturedEnpassant] = UNOCCUPIED_SQUARE;
+			opponentsPiecesRemoved = 1L << squareOfPawnCapturedEnpassant;
 		}
 
 		// move rook too if castling
-		if (move.isKingssideCastling() || move.isQueenssideCastling()) {
-			int sideOfBoard = move.isKingssideCastling() ? 0 : 1;
+		boolean kingsSideCastling = PackedMove.isKingssideCastling(move);
+		if (kingsSideCastling || PackedMove.isQueenssideCastling(move)) {
+			int sideOfBoard = kingsSideCastling ? 0 : 1;
 			int rookOriginSq = MoveGenerator.rooksCastlingSquareIndex[sideToMove.ordinal()][sideOfBoard];
 			int rookTargetSq = MoveGenerator.rooksSquareAfterCastling[sideToMove.ordinal()][sideOfBoard];
 			if (TEST_IF_VALID) {
 				if (!Pieces.isRook(pieceAt(rookOriginSq))) {
-					throw new IllegalStateException(String.format("invalid castling move %s, no rook at %s", move,
-							Square.toSquare(rookOriginSq)));
+					throw new IllegalStateException(String.format("invalid castling move %s, no rook at %s",
+							PackedMove.toString(move), Square.toSquare(rookOriginSq)));
 				}
 				if (!squareIsEmpty(rookTargetSq)) {
 					throw new IllegalStateException(
-							String.format("invalid castling move %s, rook's target sq %s is not empty", move,
-									Square.toSquare(rookTargetSq)));
+							String.format("invalid castling move %s, rook's target sq %s is not empty",
+									PackedMove.toString(move), Square.toSquare(rookTargetSq)));
 				}
 				if (!this.castlingRights[sideToMoveOrdinal][sideOfBoard]) {
-					throw new IllegalStateException(String.format("invalid move %s, castling no longer allowed", move));
+					throw new IllegalStateException(String.format("invalid move %s, castling no longer allowed",
+							PackedMove.toString(move)));
 				}
 			}
+			byte rook = board[rookOriginSq];
+			key ^= Zobrist.pieceKey(rook, rookOriginSq) ^ Zobrist.pieceKey(rook, rookTargetSq);
 			board[rookOriginSq] = UNOCCUPIED_SQUARE;
-			board[rookTargetSq] = Pieces.generateRook(Pieces.colourOf(movingPiece));
-			// piecesBitset[sideToMoveOrdinal].clear(rookOriginSq);
-			// piecesBitset[sideToMoveOrdinal].set(rookTargetSq);
+			board[rookTargetSq] = rook;
+			fromTo |= (1L << rookOriginSq) | (1L << rookTargetSq);
+		}
+		if (sideToMove == Colour.WHITE) {
+			whitePieces ^= fromTo;
+			blackPieces &= ~opponentsPiecesRemoved;
+		} else {
+			blackPieces ^= fromTo;
+			whitePieces &= ~opponentsPiecesRemoved;
 		}
 
 		// update enpassantSquare if pawn moved
-		if (Pieces.isPawn(movingPiece) && move.isPawnTwoSquaresForward()) {
-			this.enpassantSquare = Square.findEnpassantSquareFromMove(Square.toSquare(move.getTarget()));
+		key ^= Zobrist.enpassantKey(this.enpassantSquare);
+		if (Pieces.isPawn(movingPiece) && PackedMove.isPawnTwoSquaresForward(move)) {
+			this.enpassantSquare = Square.findEnpassantSquareFromMove(Square.toSquare(target));
+			key ^= Zobrist.enpassantKey(this.enpassantSquare);
 		} else {
 			this.enpassantSquare = null;
 		}
-
 		int opponentsSideOrdinal = this.sideToMove.opposite().ordinal();
 		boolean castlingRightsChanged = false;
 		boolean opponentsCastlingRightsChanged = false;
@@ -485,7 +726,7 @@ public class Position {
 		// update kingsSquare && castling rights if king moved
 		if (Pieces.isKing(movingPiece)) {
 			this.kingsSquare = this.kingsSquare.clone();
-			this.kingsSquare[sideToMoveOrdinal] = move.getTarget();
+			this.kingsSquare[sideToMoveOrdinal] = target;
 			castlingRightsChanged = true;
 			kingsCastling = false;
 			queensCastling = false;
@@ -494,11 +735,11 @@ public class Position {
 		// check if a rook moved from its starting square, therefore invalidating
 		// castling rights
 		if (Pieces.isRook(movingPiece)) {
-			if (move.getOrigin() == MoveGenerator.rooksCastlingSquareIndex[sideToMoveOrdinal][0]
+			if (origin == MoveGenerator.rooksCastlingSquareIndex[sideToMoveOrdinal][0]
 					&& canCastleKingsside(sideToMove)) {
 				castlingRightsChanged = true;
 				kingsCastling = false;
-			} else if (move.getOrigin() == MoveGenerator.rooksCastlingSquareIndex[sideToMoveOrdinal][1]
+			} else if (origin == MoveGenerator.rooksCastlingSquareIndex[sideToMoveOrdinal][1]
 					&& canCastleQueensside(sideToMove)) {
 				castlingRightsChanged = true;
 				queensCastling = false;
@@ -507,11 +748,11 @@ public class Position {
 
 		// if a piece captured something on a1/h1 or a8/h8, then opponent can't castle
 		// anymore
-		if (move.getTarget() == MoveGenerator.rooksCastlingSquareIndex[opponentsSideOrdinal][0]
+		if (target == MoveGenerator.rooksCastlingSquareIndex[opponentsSideOrdinal][0]
 				&& canCastleKingsside(sideToMove.opposite())) {
 			opponentsCastlingRightsChanged = true;
 			opponentsKingsCastling = false;
-		} else if (move.getTarget() == MoveGenerator.rooksCastlingSquareIndex[opponentsSideOrdinal][1]
+		} else if (target == MoveGenerator.rooksCastlingSquareIndex[opponentsSideOrdinal][1]
 				&& canCastleQueensside(sideToMove.opposite())) {
 			opponentsCastlingRightsChanged = true;
 			opponentsQueensCastling = false;
@@ -519,6 +760,7 @@ public class Position {
 
 		// clone and set new castling rights
 		if (castlingRightsChanged || opponentsCastlingRightsChanged) {
+			key ^= Zobrist.castlingKey(this.castlingRights);
 			this.castlingRights = this.castlingRights.clone();
 			if (castlingRightsChanged) {
 				this.castlingRights[sideToMoveOrdinal] = new boolean[] { kingsCastling, queensCastling };
@@ -527,10 +769,11 @@ public class Position {
 				this.castlingRights[opponentsSideOrdinal] = new boolean[] { opponentsKingsCastling,
 						opponentsQueensCastling };
 			}
+			key ^= Zobrist.castlingKey(this.castlingRights);
 		}
 
 		this.sideToMove = this.sideToMove.opposite();
-		this.setKingInCheck(move.getCheckSquares());
+		this.zobristKey = key ^ Zobrist.sideToMoveKey();
 	}
 
 	/**
@@ -636,10 +879,59 @@ public class Position {
 		return moveGenerator.findMoves(this, sideToMove);
 	}
 
+	/**
+	 * Finds the moves for the given colour, storing them in 'moves' in
+	 * {@link PackedMove} format.
+	 * 
+	 * @param sideToMove side to move
+	 * @param moves      will be cleared and filled with the moves
+	 */
+	public void findMoves(Colour sideToMove, MoveList moves) {
+		moveGenerator.findMoves(this, sideToMove, moves);
+	}
+
+	/**
+	 * Counts the legal moves for the given colour, without storing them.
+	 * 
+	 * @param sideToMove side to move
+	 * @return the number of legal moves
+	 */
+	public int countLegalMoves(Colour sideToMove) {
+		return moveGenerator.countLegalMoves(this, sideToMove);
+	}
+
+	/**
+	 * Finds the captures and promotions for the given colour, storing them in
+	 * 'moves' in {@link PackedMove} format.
+	 * 
+	 * @param sideToMove side to move
+	 * @param moves      will be cleared and filled with the moves
+	 */
+	public void findCapturesAndPromotions(Colour sideToMove, MoveList moves) {
+		moveGenerator.findCapturesAndPromotions(this, sideToMove, moves);
+	}
+
 	public boolean isKingInCheck() {
 		return kingInCheck;
 	}
 
+	/**
+	 * @param colour required colour
+	 * @return true if the given side has at least one piece apart from the king
+	 *         and pawns
+	 */
+	public boolean hasNonPawnMaterial(Colour colour) {
+		long pieces = getPiecesBitboard(colour);
+		while (pieces != 0) {
+			byte piece = board[Long.numberOfTrailingZeros(pieces)];
+			if (!Pieces.isPawn(piece) && !Pieces.isKing(piece)) {
+				return true;
+			}
+			pieces &= pieces - 1;
+		}
+		return false;
+	}
+
 	public void setKingInCheck(List<PieceSquareInfo> checkSquares) {
 		if (checkSquares == null || checkSquares.isEmpty()) {
 			this.kingInCheck = false;
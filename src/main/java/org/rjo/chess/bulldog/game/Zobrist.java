@@ -0,0 +1,108 @@
+package org.rjo.chess.bulldog.game;
+
+import java.util.Random;
+
+import org.rjo.chess.bulldog.board.Board.Square;
+import org.rjo.chess.bulldog.piece.Colour;
+import org.rjo.chess.bulldog.piece.Piece;
+import org.rjo.chess.bulldog.piece.Pieces;
+
+/**
+ * Random numbers for calculating the Zobrist key of a position.
+ * <p>
+ * The key of a position is the XOR of the numbers for each piece on its square, the castling rights, the file of the enpassant square (if
+ * set), and the 'side to move' number if black is to move. Since XOR is its own inverse, the key can be updated incrementally when a move is
+ * made.
+ *
+ * @author rich
+ * @see "https://www.chessprogramming.org/Zobrist_Hashing"
+ */
+public final class Zobrist {
+
+   /** fixed seed, so that keys are the same for every run */
+   private static final long SEED = 0x2D358DCCAA6C78A5L;
+
+   /** dim0: piece (as a byte, i.e. including colour), dim1: square */
+   private static final long[][] PIECE_KEYS = new long[256][];
+   /** dim0: colour, dim1: 0 - king's side, 1 - queen's side */
+   private static final long[][] CASTLING_KEYS = new long[2][2];
+   /** indexed by file of the enpassant square */
+   private static final long[] ENPASSANT_KEYS = new long[8];
+   private static final long BLACK_TO_MOVE_KEY;
+
+   static {
+      Random random = new Random(SEED);
+      for (Colour colour : Colour.values()) {
+         for (Piece piece : Piece.values()) {
+            long[] keys = new long[64];
+            for (int sq = 0; sq < 64; sq++) {
+               keys[sq] = random.nextLong();
+            }
+            PIECE_KEYS[Pieces.generatePiece(piece, colour) & 0xFF] = keys;
+         }
+         CASTLING_KEYS[colour.ordinal()][0] = random.nextLong();
+         CASTLING_KEYS[colour.ordinal()][1] = random.nextLong();
+      }
+      for (int file = 0; file < 8; file++) {
+         ENPASSANT_KEYS[file] = random.nextLong();
+      }
+      BLACK_TO_MOVE_KEY = random.nextLong();
+   }
+
+   private Zobrist() {
+      // cannot be instantiated
+   }
+
+   public static long pieceKey(byte piece, int sq) {
+      return PIECE_KEYS[piece & 0xFF][sq];
+   }
+
+   /**
+    * @param castlingRights castling rights as stored in Position
+    * @return XOR of the keys of all castling rights which are set
+    */
+   public static long castlingKey(boolean[][] castlingRights) {
+      long key = 0;
+      for (int col = 0; col < 2; col++) {
+         if (castlingRights[col][0]) { key ^= CASTLING_KEYS[col][0]; }
+         if (castlingRights[col][1]) { key ^= CASTLING_KEYS[col][1]; }
+      }
+      return key;
+   }
+
+   /**
+    * @param enpassantSquare enpassant square, can be null
+    * @return the key for the enpassant square, or 0 if null
+    */
+   public static long enpassantKey(Square enpassantSquare) {
+      return enpassantSquare == null ? 0 : ENPASSANT_KEYS[enpassantSquare.index() & 7];
+   }
+
+   public static long sideToMoveKey(Colour sideToMove) {
+      return sideToMove == Colour.BLACK ? BLACK_TO_MOVE_KEY : 0;
+   }
+
+   /** the key to XOR when the side to move changes */
+   public static long sideToMoveKey() {
+      return BLACK_TO_MOVE_KEY;
+   }
+
+   /**
+    * Calculates the key for the given position from scratch.
+    *
+    * @param posn the position
+    * @return the Zobrist key
+    */
+   public static long calculateKey(Position posn) {
+      long key = 0;
+      for (int sq = 0; sq < 64; sq++) {
+         byte piece = posn.pieceAt(sq);
+         if (piece != 0) { key ^= pieceKey(piece, sq); }
+      }
+      key ^= castlingKey(new boolean[][] { { posn.canCastleKingsside(Colour.WHITE), posn.canCastleQueensside(Colour.WHITE) },
+            { posn.canCastleKingsside(Colour.BLACK), posn.canCastleQueensside(Colour.BLACK) } });
+      key ^= enpassantKey(posn.getEnpassantSquare());
+      key ^= sideToMoveKey(posn.getSideToMove());
+      return key;
+   }
+}
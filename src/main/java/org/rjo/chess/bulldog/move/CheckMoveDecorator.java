@@ -75,4 +75,9 @@ public class CheckMoveDecorator implements IMove {
    public String toUCIString() {
       return move.toUCIString();
    }
+
+   @Override
+   public int toPackedMove() {
+      return move.toPackedMove() | PackedMove.CHECK;
+   }
 }
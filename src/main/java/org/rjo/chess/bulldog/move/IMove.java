@@ -34,4 +34,9 @@ public interface IMove {
    public boolean moveCapturesPiece(int captureSquare);
 
    public String toUCIString();
+
+   /**
+    * @return this move in the format described in {@link PackedMove}
+    */
+   int toPackedMove();
 }
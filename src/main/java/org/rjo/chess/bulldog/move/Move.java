@@ -27,6 +27,7 @@ public class Move implements IMove {
    private final boolean kingsSideCastling;
    private final boolean queensSideCastling;
    private final boolean pawnTwoSquaresForward; // marker field to indicate a pawn move of two squares (used in Position when performing a move)
+   private final int packedMove; // this move as an int, see PackedMove
 
    /**
     * Base Constructor.
@@ -51,6 +52,8 @@ public class Move implements IMove {
       this.kingsSideCastling = kingsSideCastling;
       this.queensSideCastling = queensSideCastling;
       this.pawnTwoSquaresForward = pawnTwoSquaresForward;
+      this.packedMove = PackedMove.encode(originSq, targetSq, capture, promotedPiece, enpassant, kingsSideCastling, queensSideCastling,
+            pawnTwoSquaresForward);
    }
 
    /**
@@ -201,4 +204,7 @@ public class Move implements IMove {
    @Override
    public byte getPromotedPiece() { return promotedPiece; }
 
+   @Override
+   public int toPackedMove() { return packedMove; }
+
 }
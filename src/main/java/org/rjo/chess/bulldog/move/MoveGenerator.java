@@ -13,6 +13,7 @@ import org.rjo.chess.bulldog.bits.BitSetFactory;
 import org.rjo.chess.bulldog.bits.BitSetHelper;
 import org.rjo.chess.bulldog.bits.BitSetUnifier;
 import org.rjo.chess.bulldog.board.Board;
+import org.rjo.chess.bulldog.board.MagicBitboards;
 import org.rjo.chess.bulldog.board.Ray;
 import org.rjo.chess.bulldog.board.Board.Square;
 import org.rjo.chess.bulldog.game.Position;
@@ -29,6 +30,9 @@ import org.rjo.chess.bulldog.piece.Pieces;
  */
 public class MoveGenerator implements MoveGeneratorI {
 
+   /** if set, moves of sliding pieces are generated using {@link MagicBitboards}, otherwise by following the 'moveNodes' */
+   private static final boolean USE_MAGIC_BITBOARDS = true;
+
    private boolean verbose;
 
    /**
@@ -136,6 +140,11 @@ public class MoveGenerator implements MoveGeneratorI {
    /** holds linked lists of moves for various pieces (e.g. sliding pieces, knights, king). Pawns are treated separately */
    /* package */ final static MoveNode[][] moveNodes = new MoveNode[6][64]; // dim0=piece type; dim1=head of a linked list of possible squares to move to
 
+   /** non-capture moves for sliding pieces, dim0=from, dim1=to. Only set if 'from' and 'to' are on the same ray */
+   private final static IMove[][] sliderMoves = new IMove[64][64];
+   /** capture moves for sliding pieces, dim0=from, dim1=to. Only set if 'from' and 'to' are on the same ray */
+   private final static IMove[][] sliderCaptures = new IMove[64][64];
+
    /**
     * Valid squares for the king to move to, stored as bitsets for each square.
     */
@@ -341,6 +350,16 @@ public class MoveGenerator implements MoveGeneratorI {
          }
       }
 
+      // reuse the moves already stored in the queen's linked lists
+      for (int fromSq = 0; fromSq < 64; fromSq++) {
+         MoveNode node = moveNodes[Piece.QUEEN.ordinal()][fromSq];
+         while (node != null) {
+            sliderMoves[fromSq][node.to] = node.move;
+            sliderCaptures[fromSq][node.to] = node.captureMove;
+            node = node.next[0] != null ? node.next[0] : node.next[1];
+         }
+      }
+
       knightMoves = new Set[64];
       for (int sq = 0; sq < 64; sq++) {
          KNIGHT_MOVES[sq] = BitSetFactory.createBitSet(64);
@@ -412,6 +431,57 @@ public class MoveGenerator implements MoveGeneratorI {
 
    @Override
    public List<IMove> findMoves(Position posn, Colour colour) {
+      List<IMove> allMoves = findLegalMoves(posn, colour);
+
+      // ***
+      // now process checks against _opposing_ king
+      // ***
+      RayCacheInfo[] squaresAttackingOpponentsKing = new RayCacheInfo[64]; // this stores the result of processed squares (for sliding pieces)
+      int opponentsKingsSquare = posn.getKingsSquare(colour.opposite());
+      ListIterator<IMove> iter = allMoves.listIterator();
+      while (iter.hasNext()) {
+         IMove m = iter.next();
+
+         List<PieceSquareInfo> checkSquares = isOpponentsKingInCheckAfterMove(posn, m, opponentsKingsSquare, colour.opposite(), squaresAttackingOpponentsKing);
+         if (!checkSquares.isEmpty()) {
+            iter.remove();
+            iter.add(new CheckMoveDecorator(m, checkSquares));
+         }
+      }
+
+      return allMoves;
+   }
+
+   /**
+    * As {@link #findMoves(Position, Colour)}, but stores the moves in {@link PackedMove} format. Moves which check the opponent's king have
+    * the {@link PackedMove#CHECK} flag set; the checking squares are not stored (see {@link Position#move(int)}).
+    */
+   @Override
+   public void findMoves(Position posn, Colour colour, MoveList moves) {
+      PackedMoveGenerator.generate(posn, colour, moves, false);
+   }
+
+   /**
+    * As {@link #findMoves(Position, Colour, MoveList)}, but only captures (incl. enpassant) and promotions are generated.
+    */
+   @Override
+   public void findCapturesAndPromotions(Position posn, Colour colour, MoveList moves) {
+      PackedMoveGenerator.generate(posn, colour, moves, true);
+   }
+
+   /**
+    * Counts the legal moves. This is cheaper than {@link #findMoves(Position, Colour, MoveList)}, since the moves are not stored and are not
+    * checked to see if they give check.
+    */
+   @Override
+   public int countLegalMoves(Position posn, Colour colour) {
+      return PackedMoveGenerator.generate(posn, colour, null, false);
+   }
+
+   /**
+    * Finds all legal moves. Moves are not checked to see if they give check.
+    */
+   private List<IMove> findLegalMoves(Position posn, Colour colour) {
       /*
        * Instead of looking at all the squares from 0..63, starts at the kingsSquare and proceeds in ray order first. Then all other squares are
        * processed. This is done to reduce / simplify the amount of work needed later to see if a move left our king in check. The
@@ -427,6 +497,8 @@ public class MoveGenerator implements MoveGeneratorI {
       int kingsSquare = posn.getKingsSquare(colour);
       // this bitset stores info about squares which block the check (bit is set).
       BitSetUnifier checkMask;
+      // same as checkMask, as a long (for the magic bitboard lookups)
+      long checkMaskAsLong;
       // the 'kingsForbiddenSquaresMask' serves as the set of squares the king _cannot_ move to. So starts off empty.
       BitSetUnifier kingsForbiddenSquaresMask = null;
       PieceSquareInfo checkInfo = null;
@@ -458,9 +530,11 @@ public class MoveGenerator implements MoveGeneratorI {
          // this square does not get added to the kingsForbiddenSquaresMask
          checkMask.set(posn.getCheckSquares().get(0).square());
          if (kingInDoubleCheck) { checkMask.set(posn.getCheckSquares().get(1).square()); }
+         checkMaskAsLong = checkMask.toLongArray()[0];
          kingsForbiddenSquaresMask = BitSetFactory.createBitSet(kingsForbiddenSquaresMaskLong);
       } else {
          checkMask = BitSetFactory.createBitSet(Ray.fullysetBsAsLong); // all squares are OK
+         checkMaskAsLong = Ray.fullysetBsAsLong;
          kingsForbiddenSquaresMask = BitSetFactory.createBitSet(64); // all squares are OKs
       }
       // remove target squares occupied by my own pieces -- TODO only necesary if not in check (i.e. preceding else?)
@@ -479,7 +553,7 @@ public class MoveGenerator implements MoveGeneratorI {
          for (Ray ray : Ray.values()) {
             movesWithStartSqOnRay[ray.ordinal()] = new LinkedList<>();
             for (int raySq : Ray.raysList[kingsSquare][ray.ordinal()]) {
-               processSquare(posn, raySq, colour, movesWithStartSqOnRay[ray.ordinal()], checkInfo, kingsSquare, checkMask);
+               processSquare(posn, raySq, colour, movesWithStartSqOnRay[ray.ordinal()], checkInfo, kingsSquare, checkMask, checkMaskAsLong);
                squaresProcessed[raySq] = true;
             }
          }
@@ -488,7 +562,7 @@ public class MoveGenerator implements MoveGeneratorI {
 
          // process all other squares
          for (int sq = 0; sq < 64; sq++) {
-            if (!squaresProcessed[sq]) { processSquare(posn, sq, colour, otherMoves, checkInfo, kingsSquare, checkMask); }
+            if (!squaresProcessed[sq]) { processSquare(posn, sq, colour, otherMoves, checkInfo, kingsSquare, checkMask, checkMaskAsLong); }
          }
 
          if (!posn.isKingInCheck()) {
@@ -520,22 +594,6 @@ public class MoveGenerator implements MoveGeneratorI {
       // since isKingInCheckAfterMove(...) copes with king moves as well
       allMoves.addAll(kingMoves);
 
-      // ***
-      // now process checks against _opposing_ king
-      // ***
-      RayCacheInfo[] squaresAttackingOpponentsKing = new RayCacheInfo[64]; // this stores the result of processed squares (for sliding pieces)
-      int opponentsKingsSquare = posn.getKingsSquare(colour.opposite());
-      ListIterator<IMove> iter = allMoves.listIterator();
-      while (iter.hasNext()) {
-         IMove m = iter.next();
-
-         List<PieceSquareInfo> checkSquares = isOpponentsKingInCheckAfterMove(posn, m, opponentsKingsSquare, colour.opposite(), squaresAttackingOpponentsKing);
-         if (!checkSquares.isEmpty()) {
-            iter.remove();
-            iter.add(new CheckMoveDecorator(m, checkSquares));
-         }
-      }
-
       return allMoves;
    }
 
@@ -874,9 +932,10 @@ public class MoveGenerator implements MoveGeneratorI {
     * @param checkInfo   non-null if our king is currently in check
     * @param kingsSquare position of our king; relevant if checkInfo!=null
     * @param checkMask   if the square in the checkMask is set, then it blocks the check.
+    * @param checkMaskAsLong the checkMask as a long
     */
    private void processSquare(Position posn, int startSq, Colour colour, List<IMove> moves, PieceSquareInfo checkInfo, int kingsSquare,
-         BitSetUnifier checkMask) {
+         BitSetUnifier checkMask, long checkMaskAsLong) {
       if (!posn.squareIsEmpty(startSq) && posn.colourOfPieceAt(startSq) == colour) {
          final byte pieceOnStartSq = posn.pieceAt(startSq);
          if (Pieces.isPawn(pieceOnStartSq)) {
@@ -885,6 +944,8 @@ public class MoveGenerator implements MoveGeneratorI {
             generateKnightMoves(posn, startSq, colour, moves, checkMask);
          } else if (Pieces.isKing(pieceOnStartSq)) {
             throw new IllegalStateException(String.format("called processSquare (sq=%s) with King:%n%s", Square.toSquare(startSq), posn));
+         } else if (USE_MAGIC_BITBOARDS) {
+            generateSlidingMoves(posn, startSq, pieceOnStartSq, colour, moves, checkMaskAsLong);
          } else {
             MoveNode targetNode = moveNodes[Pieces.toPiece(pieceOnStartSq).ordinal()][startSq];
             while (targetNode != null) {
@@ -910,6 +971,36 @@ public class MoveGenerator implements MoveGeneratorI {
 
    }
 
+   /**
+    * Generates the moves for a rook, bishop or queen using {@link MagicBitboards}. Pins are not taken into account.
+    * 
+    * @param posn      position
+    * @param startSq   square of the piece
+    * @param piece     the piece on startSq
+    * @param colour    colour to move
+    * @param moves     moves will be added to this list
+    * @param checkMask only moves to squares which are set in this mask will be added
+    */
+   private void generateSlidingMoves(Position posn, int startSq, byte piece, Colour colour, List<IMove> moves, long checkMask) {
+      long occupied = posn.getOccupiedBitboard();
+      long attacks;
+      if (Pieces.isRook(piece)) {
+         attacks = MagicBitboards.rookAttacks(startSq, occupied);
+      } else if (Pieces.isBishop(piece)) {
+         attacks = MagicBitboards.bishopAttacks(startSq, occupied);
+      } else {
+         attacks = MagicBitboards.queenAttacks(startSq, occupied);
+      }
+      attacks &= ~posn.getPiecesBitboard(colour) & checkMask;
+      long opponentsPieces = posn.getPiecesBitboard(colour.opposite());
+      while (attacks != 0) {
+         int targetSq = Long.numberOfTrailingZeros(attacks);
+         long targetBit = attacks & -attacks;
+         moves.add((opponentsPieces & targetBit) != 0 ? sliderCaptures[startSq][targetSq] : sliderMoves[startSq][targetSq]);
+         attacks ^= targetBit;
+      }
+   }
+
    private <T> void addIfNotNull(List<T> list, T object) {
       if (object != null) { list.add(object); }
    }
@@ -13,4 +13,47 @@ import org.rjo.chess.bulldog.piece.Colour;
 public interface MoveGeneratorI {
    List<IMove> findMoves(Position posn, Colour colour);
 
+   /**
+    * Finds all moves for the given colour and stores them in 'moves' in {@link PackedMove} format. 'moves' is cleared first.
+    *
+    * @param posn   position
+    * @param colour side to move
+    * @param moves  will be filled with the moves
+    */
+   default void findMoves(Position posn, Colour colour, MoveList moves) {
+      moves.clear();
+      for (IMove m : findMoves(posn, colour)) {
+         moves.add(m.toPackedMove());
+      }
+   }
+
+   /**
+    * Counts the legal moves for the given colour, without storing them.
+    *
+    * @param posn   position
+    * @param colour side to move
+    * @return the number of legal moves
+    */
+   default int countLegalMoves(Position posn, Colour colour) {
+      return findMoves(posn, colour).size();
+   }
+
+   /**
+    * Finds all captures (incl. enpassant) and promotions for the given colour and stores them in 'moves' in {@link PackedMove} format. 'moves'
+    * is cleared first.
+    *
+    * @param posn   position
+    * @param colour side to move
+    * @param moves  will be filled with the moves
+    */
+   default void findCapturesAndPromotions(Position posn, Colour colour, MoveList moves) {
+      findMoves(posn, colour, moves);
+      int size = 0;
+      for (int i = 0; i < moves.size(); i++) {
+         int move = moves.get(i);
+         if (PackedMove.isCapture(move) || PackedMove.isPromotion(move)) { moves.set(size++, move); }
+      }
+      moves.truncate(size);
+   }
+
 }
@@ -0,0 +1,80 @@
+package org.rjo.chess.bulldog.move;
+
+import java.util.Arrays;
+
+/**
+ * A list of moves in {@link PackedMove} format, backed by an int array. Designed to be reused (see {@link #clear()}) to avoid allocating
+ * objects during move generation.
+ *
+ * @author rich
+ */
+public class MoveList {
+
+   /** more than enough for any legal position (max known is 218) */
+   public static final int DEFAULT_CAPACITY = 256;
+
+   private int[] moves;
+   private int size;
+
+   public MoveList() {
+      this(DEFAULT_CAPACITY);
+   }
+
+   public MoveList(int capacity) {
+      this.moves = new int[capacity];
+   }
+
+   public void add(int move) {
+      if (size == moves.length) { moves = Arrays.copyOf(moves, moves.length * 2); }
+      moves[size++] = move;
+   }
+
+   public int get(int index) {
+      if (index >= size) { throw new IndexOutOfBoundsException("index " + index + ", size " + size); }
+      return moves[index];
+   }
+
+   public void set(int index, int move) {
+      if (index >= size) { throw new IndexOutOfBoundsException("index " + index + ", size " + size); }
+      moves[index] = move;
+   }
+
+   /**
+    * Swaps the moves at the given positions.
+    */
+   public void swap(int i, int j) {
+      if (i >= size || j >= size) { throw new IndexOutOfBoundsException("index " + Math.max(i, j) + ", size " + size); }
+      int move = moves[i];
+      moves[i] = moves[j];
+      moves[j] = move;
+   }
+
+   public int size() { return size; }
+
+   public boolean isEmpty() { return size == 0; }
+
+   public void clear() {
+      size = 0;
+   }
+
+   /**
+    * Reduces the size of the list, i.e. removes all moves from position 'newSize' onwards.
+    *
+    * @param newSize the new size, must not be larger than the current size
+    */
+   public void truncate(int newSize) {
+      if (newSize > size) { throw new IndexOutOfBoundsException("new size " + newSize + " > size " + size); }
+      size = newSize;
+   }
+
+   @Override
+   public String toString() {
+      StringBuilder sb = new StringBuilder(size * 8);
+      sb.append('[');
+      for (int i = 0; i < size; i++) {
+         if (i > 0) { sb.append(", "); }
+         sb.append(PackedMove.toString(moves[i]));
+      }
+      return sb.append(']').toString();
+   }
+}
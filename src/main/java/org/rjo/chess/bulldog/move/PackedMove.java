@@ -0,0 +1,169 @@
+package org.rjo.chess.bulldog.move;
+
+import java.util.List;
+
+import org.rjo.chess.bulldog.board.Board.Square;
+import org.rjo.chess.bulldog.piece.Colour;
+import org.rjo.chess.bulldog.piece.Piece;
+import org.rjo.chess.bulldog.piece.Pieces;
+
+/**
+ * Helper methods for moves stored in an <code>int</code>.
+ *
+ * @formatter:off
+ * Format:
+ *  bits  0- 5  origin square
+ *  bits  6-11  target square
+ *  bits 12-14  promoted piece type (Piece.ordinal()+1), 0 if not a promotion
+ *  bits 15-17  captured piece type (Piece.ordinal()+1), 0 if not a capture or not known
+ *  bit  18     capture
+ *  bit  19     enpassant
+ *  bit  20     king's side castling
+ *  bit  21     queen's side castling
+ *  bit  22     pawn moved two squares forward
+ *  bit  23     move gives check
+ * @formatter:on
+ *
+ * The colour of a promoted piece is not stored, since it is given by the rank of the target square. The same applies to the square of a pawn
+ * captured enpassant.
+ *
+ * @author rich
+ */
+public final class PackedMove {
+
+   /** can be used to represent 'no move' (a8-a8 is not a valid move) */
+   public static final int NO_MOVE = 0;
+
+   private static final int SQUARE_MASK = 0x3F;
+   private static final int TARGET_SHIFT = 6;
+   private static final int PROMOTED_PIECE_SHIFT = 12;
+   private static final int CAPTURED_PIECE_SHIFT = 15;
+   private static final int PIECE_TYPE_MASK = 0x7;
+
+   public static final int CAPTURE = 1 << 18;
+   public static final int ENPASSANT = 1 << 19;
+   public static final int KINGS_SIDE_CASTLING = 1 << 20;
+   public static final int QUEENS_SIDE_CASTLING = 1 << 21;
+   public static final int PAWN_TWO_SQUARES_FORWARD = 1 << 22;
+   public static final int CHECK = 1 << 23;
+
+   private static final Piece[] PIECES = Piece.values();
+
+   private PackedMove() {
+      // cannot be instantiated
+   }
+
+   /**
+    * Encodes a move.
+    *
+    * @param originSq              origin square
+    * @param targetSq              target square
+    * @param capture               true if capture
+    * @param promotedPiece         promoted piece, 0 if not a promotion
+    * @param enpassant             true if enpassant
+    * @param kingsSideCastling     true if king's-side castling
+    * @param queensSideCastling    true if queen's-side castling
+    * @param pawnTwoSquaresForward true if pawn move two-squares forward
+    * @return the move as an int
+    */
+   public static int encode(int originSq, int targetSq, boolean capture, byte promotedPiece, boolean enpassant, boolean kingsSideCastling,
+         boolean queensSideCastling, boolean pawnTwoSquaresForward) {
+      int move = originSq | (targetSq << TARGET_SHIFT);
+      if (promotedPiece != 0) { move |= (Pieces.toPiece(promotedPiece).ordinal() + 1) << PROMOTED_PIECE_SHIFT; }
+      if (capture) { move |= CAPTURE; }
+      if (enpassant) { move |= ENPASSANT | ((Piece.PAWN.ordinal() + 1) << CAPTURED_PIECE_SHIFT); }
+      if (kingsSideCastling) { move |= KINGS_SIDE_CASTLING; }
+      if (queensSideCastling) { move |= QUEENS_SIDE_CASTLING; }
+      if (pawnTwoSquaresForward) { move |= PAWN_TWO_SQUARES_FORWARD; }
+      return move;
+   }
+
+   /**
+    * @param move          the move
+    * @param capturedPiece the piece on the target square
+    * @return the move with the captured piece type set. The move is returned unchanged if it is not a capture or is enpassant.
+    */
+   public static int withCapturedPiece(int move, byte capturedPiece) {
+      if ((move & CAPTURE) == 0 || (move & ENPASSANT) != 0) { return move; }
+      return move | ((Pieces.toPiece(capturedPiece).ordinal() + 1) << CAPTURED_PIECE_SHIFT);
+   }
+
+   public static int getOrigin(int move) { return move & SQUARE_MASK; }
+
+   public static int getTarget(int move) { return (move >>> TARGET_SHIFT) & SQUARE_MASK; }
+
+   public static boolean isCapture(int move) { return (move & CAPTURE) != 0; }
+
+   public static boolean isEnpassant(int move) { return (move & ENPASSANT) != 0; }
+
+   public static boolean isKingssideCastling(int move) { return (move & KINGS_SIDE_CASTLING) != 0; }
+
+   public static boolean isQueenssideCastling(int move) { return (move & QUEENS_SIDE_CASTLING) != 0; }
+
+   public static boolean isPawnTwoSquaresForward(int move) { return (move & PAWN_TWO_SQUARES_FORWARD) != 0; }
+
+   public static boolean isCheck(int move) { return (move & CHECK) != 0; }
+
+   public static boolean isPromotion(int move) { return ((move >>> PROMOTED_PIECE_SHIFT) & PIECE_TYPE_MASK) != 0; }
+
+   /**
+    * @return type of the promoted piece, or null if not a promotion
+    */
+   public static Piece getPromotedPieceType(int move) {
+      int type = (move >>> PROMOTED_PIECE_SHIFT) & PIECE_TYPE_MASK;
+      return type == 0 ? null : PIECES[type - 1];
+   }
+
+   /**
+    * @return the promoted piece (incl. colour), or 0 if not a promotion
+    */
+   public static byte getPromotedPiece(int move) {
+      Piece type = getPromotedPieceType(move);
+      if (type == null) { return 0; }
+      // white promotes on the 8th rank, i.e. squares 0..7
+      return Pieces.generatePiece(type, getTarget(move) < 8 ? Colour.WHITE : Colour.BLACK);
+   }
+
+   /**
+    * @return type of the captured piece, or null if not a capture (or the captured piece was not recorded)
+    */
+   public static Piece getCapturedPieceType(int move) {
+      int type = (move >>> CAPTURED_PIECE_SHIFT) & PIECE_TYPE_MASK;
+      return type == 0 ? null : PIECES[type - 1];
+   }
+
+   /**
+    * @return the square of the pawn which was captured enpassant. Only valid if the move is enpassant.
+    */
+   public static int getSquareOfPawnCapturedEnpassant(int move) {
+      int target = getTarget(move);
+      // white captures onto the 6th rank (squares 16..23), the black pawn is one rank 'below'
+      return target + (target < 32 ? 8 : -8);
+   }
+
+   /**
+    * Converts the move to an IMove, e.g. for display purposes.
+    *
+    * @param move the move
+    * @return an IMove object. If the move gives check, the check squares will <b>not</b> be set.
+    */
+   public static IMove toMove(int move) {
+      IMove m = new Move(getOrigin(move), getTarget(move), isCapture(move), getPromotedPiece(move), isEnpassant(move),
+            isEnpassant(move) ? getSquareOfPawnCapturedEnpassant(move) : 0, isKingssideCastling(move), isQueenssideCastling(move),
+            isPawnTwoSquaresForward(move));
+      return isCheck(move) ? new CheckMoveDecorator(m, List.of()) : m;
+   }
+
+   public static String toUCIString(int move) {
+      StringBuilder sb = new StringBuilder(5);
+      sb.append(Square.toSquare(getOrigin(move)).name()).append(Square.toSquare(getTarget(move)).name());
+      return sb.toString();
+   }
+
+   /**
+    * @return same format as {@link Move#toString()}
+    */
+   public static String toString(int move) {
+      return toMove(move).toString();
+   }
+}
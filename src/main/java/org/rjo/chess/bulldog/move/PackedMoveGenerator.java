@@ -0,0 +1,324 @@
+package org.rjo.chess.bulldog.move;
+
+import org.rjo.chess.bulldog.board.Board.Square;
+import org.rjo.chess.bulldog.board.LeaperAttacks;
+import org.rjo.chess.bulldog.board.MagicBitboards;
+import org.rjo.chess.bulldog.game.Position;
+import org.rjo.chess.bulldog.piece.Colour;
+import org.rjo.chess.bulldog.piece.Piece;
+import org.rjo.chess.bulldog.piece.Pieces;
+
+/**
+ * Legal move generation on bitboards, storing the moves directly in {@link PackedMove} format. Unlike
+ * {@link MoveGenerator#findMoves(Position, Colour)}, no move objects or intermediate lists are created.
+ * <p>
+ * Pinned pieces are found by looking for the opponent's sliding pieces which x-ray our king; a pinned piece may only move along the line
+ * through its square and the king. King moves and enpassant captures are verified against the occupancy after the move. Whether a move
+ * gives check is worked out afterwards for each move, by looking for our sliding pieces which attack the opponent's king after the move
+ * (which covers discovered checks too) and for a direct check by the moved pawn or knight.
+ * <p>
+ * Stateless, can be used by several threads at the same time.
+ *
+ * @author rich
+ */
+final class PackedMoveGenerator {
+
+   private static final long RANK_1 = 0xFFL << 56;
+   private static final long RANK_2 = 0xFFL << 48;
+   private static final long RANK_7 = 0xFFL << 8;
+   private static final long RANK_8 = 0xFFL;
+
+   /** the squares between two squares on the same rank, file or diagonal (excluding both squares); 0 if not on the same line */
+   private static final long[][] BETWEEN = new long[64][64];
+   /** the complete line through two squares on the same rank, file or diagonal; 0 if not on the same line */
+   private static final long[][] LINE = new long[64][64];
+   /** the promotion pieces for each colour, in the same order as in {@link MoveGenerator} */
+   private static final byte[][] PROMOTION_PIECES = new byte[2][];
+
+   static {
+      for (int a = 0; a < 64; a++) {
+         long aBit = 1L << a;
+         for (int b = 0; b < 64; b++) {
+            long bBit = 1L << b;
+            if (a == b) { continue; }
+            if ((MagicBitboards.rookAttacks(a, 0) & bBit) != 0) {
+               BETWEEN[a][b] = MagicBitboards.rookAttacks(a, bBit) & MagicBitboards.rookAttacks(b, aBit);
+               LINE[a][b] = (MagicBitboards.rookAttacks(a, 0) & MagicBitboards.rookAttacks(b, 0)) | aBit | bBit;
+            } else if ((MagicBitboards.bishopAttacks(a, 0) & bBit) != 0) {
+               BETWEEN[a][b] = MagicBitboards.bishopAttacks(a, bBit) & MagicBitboards.bishopAttacks(b, aBit);
+               LINE[a][b] = (MagicBitboards.bishopAttacks(a, 0) & MagicBitboards.bishopAttacks(b, 0)) | aBit | bBit;
+            }
+         }
+      }
+      for (Colour col : Colour.ALL_COLOURS) {
+         PROMOTION_PIECES[col.ordinal()] = new byte[] { Pieces.generatePiece(Piece.ROOK, col), Pieces.generatePiece(Piece.KNIGHT, col),
+               Pieces.generatePiece(Piece.BISHOP, col), Pieces.generatePiece(Piece.QUEEN, col) };
+      }
+   }
+
+   private PackedMoveGenerator() {
+      // cannot be instantiated
+   }
+
+   /**
+    * Generates the legal moves.
+    *
+    * @param posn         position
+    * @param colour       side to move
+    * @param moves        the moves will be stored here, after clearing the list. If null, the moves are only counted (and are not checked to
+    *                     see if they give check).
+    * @param capturesOnly if true, only captures (incl. enpassant) and promotions are generated
+    * @return the number of legal moves
+    */
+   static int generate(Position posn, Colour colour, MoveList moves, boolean capturesOnly) {
+      if (moves != null) { moves.clear(); }
+      final int us = colour.ordinal();
+      final long ours = posn.getPiecesBitboard(colour);
+      final long theirs = posn.getPiecesBitboard(colour.opposite());
+      final long occupied = ours | theirs;
+      final int kingSq = posn.getKingsSquare(colour);
+      final long theirKing = 1L << posn.getKingsSquare(colour.opposite());
+
+      long ourPawns = 0, ourKnights = 0, ourBishopsQueens = 0, ourRooksQueens = 0;
+      long theirPawns = 0, theirKnights = 0, theirBishopsQueens = 0, theirRooksQueens = 0;
+      for (long pieces = occupied; pieces != 0; pieces &= pieces - 1) {
+         int sq = Long.numberOfTrailingZeros(pieces);
+         long bit = 1L << sq;
+         byte piece = posn.pieceAt(sq);
+         boolean mine = (ours & bit) != 0;
+         if (Pieces.isPawn(piece)) {
+            if (mine) { ourPawns |= bit; } else { theirPawns |= bit; }
+         } else if (Pieces.isKnight(piece)) {
+            if (mine) { ourKnights |= bit; } else { theirKnights |= bit; }
+         } else {
+            if (Pieces.isBishopOrQueen(piece)) {
+               if (mine) { ourBishopsQueens |= bit; } else { theirBishopsQueens |= bit; }
+            }
+            if (Pieces.isRookOrQueen(piece)) {
+               if (mine) { ourRooksQueens |= bit; } else { theirRooksQueens |= bit; }
+            }
+         }
+      }
+
+      int count = 0;
+      final long captureMask = capturesOnly ? theirs : ~0L;
+
+      // king moves: the king itself is removed from the board, so that it cannot move along the ray of a checking piece
+      final long occupiedWithoutKing = occupied & ~(1L << kingSq);
+      for (long targets = LeaperAttacks.kingAttacks(kingSq) & ~ours & captureMask; targets != 0; targets &= targets - 1) {
+         int to = Long.numberOfTrailingZeros(targets);
+         if (attackers(to, occupiedWithoutKing, us, theirPawns, theirKnights, theirBishopsQueens, theirRooksQueens, theirKing) == 0) {
+            count += addMoves(posn, moves, kingSq, 1L << to, theirs);
+         }
+      }
+
+      final long checkers = attackers(kingSq, occupied, us, theirPawns, theirKnights, theirBishopsQueens, theirRooksQueens, 0);
+      if (Long.bitCount(checkers) < 2) {
+         // in check: must capture the checking piece or block the check
+         final long checkMask = checkers == 0 ? ~0L : checkers | BETWEEN[kingSq][Long.numberOfTrailingZeros(checkers)];
+
+         // pinned pieces: only one of our pieces between the king and an opponent's sliding piece
+         long pinned = 0;
+         long snipers = (MagicBitboards.rookAttacks(kingSq, theirs) & theirRooksQueens)
+               | (MagicBitboards.bishopAttacks(kingSq, theirs) & theirBishopsQueens);
+         for (; snipers != 0; snipers &= snipers - 1) {
+            long blockers = BETWEEN[kingSq][Long.numberOfTrailingZeros(snipers)] & occupied;
+            if (blockers != 0 && (blockers & (blockers - 1)) == 0 && (blockers & ours) != 0) { pinned |= blockers; }
+         }
+
+         count += generatePawnMoves(posn, colour, moves, capturesOnly, ourPawns & ~pinned, ~0L, checkMask, occupied, theirs);
+         for (long pinnedPawns = ourPawns & pinned; pinnedPawns != 0; pinnedPawns &= pinnedPawns - 1) {
+            int from = Long.numberOfTrailingZeros(pinnedPawns);
+            count += generatePawnMoves(posn, colour, moves, capturesOnly, 1L << from, LINE[kingSq][from], checkMask, occupied, theirs);
+         }
+
+         // a pinned knight can never move
+         final long targetMask = ~ours & checkMask & captureMask;
+         for (long knights = ourKnights & ~pinned; knights != 0; knights &= knights - 1) {
+            int from = Long.numberOfTrailingZeros(knights);
+            count += addMoves(posn, moves, from, LeaperAttacks.knightAttacks(from) & targetMask, theirs);
+         }
+
+         for (long sliders = ourBishopsQueens | ourRooksQueens; sliders != 0; sliders &= sliders - 1) {
+            int from = Long.numberOfTrailingZeros(sliders);
+            long fromBit = 1L << from;
+            long attacks = 0;
+            if ((ourBishopsQueens & fromBit) != 0) { attacks |= MagicBitboards.bishopAttacks(from, occupied); }
+            if ((ourRooksQueens & fromBit) != 0) { attacks |= MagicBitboards.rookAttacks(from, occupied); }
+            attacks &= targetMask;
+            if ((pinned & fromBit) != 0) { attacks &= LINE[kingSq][from]; }
+            count += addMoves(posn, moves, from, attacks, theirs);
+         }
+
+         // enpassant: verified by looking at the position after the move, since two pawns disappear from the rank
+         Square enpassantSquare = posn.getEnpassantSquare();
+         if (enpassantSquare != null) {
+            int ep = enpassantSquare.index();
+            int squareOfCapturedPawn = ep + (colour == Colour.WHITE ? 8 : -8);
+            for (long pawns = LeaperAttacks.pawnAttacks(colour.opposite(), ep) & ourPawns; pawns != 0; pawns &= pawns - 1) {
+               int from = Long.numberOfTrailingZeros(pawns);
+               long occupiedAfterMove = (occupied & ~(1L << from) & ~(1L << squareOfCapturedPawn)) | (1L << ep);
+               if (attackers(kingSq, occupiedAfterMove, us, theirPawns & ~(1L << squareOfCapturedPawn), theirKnights, theirBishopsQueens,
+                     theirRooksQueens, 0) == 0) {
+                  count += add(moves, PackedMove.encode(from, ep, true, (byte) 0, true, false, false, false));
+               }
+            }
+         }
+
+         if (checkers == 0 && !capturesOnly) {
+            if (posn.canCastleKingsside(colour)
+                  && canCastle(posn, colour, 0, occupied, theirPawns, theirKnights, theirBishopsQueens, theirRooksQueens, theirKing)) {
+               count += add(moves, Move.KINGS_CASTLING_MOVE[us].toPackedMove());
+            }
+            if (posn.canCastleQueensside(colour)
+                  && canCastle(posn, colour, 1, occupied, theirPawns, theirKnights, theirBishopsQueens, theirRooksQueens, theirKing)) {
+               count += add(moves, Move.QUEENS_CASTLING_MOVE[us].toPackedMove());
+            }
+         }
+      }
+
+      if (moves != null) {
+         int opponentsKingsSq = Long.numberOfTrailingZeros(theirKing);
+         for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            if (givesCheck(posn, move, colour, occupied, ourBishopsQueens, ourRooksQueens, opponentsKingsSq)) { moves.set(i, move | PackedMove.CHECK); }
+         }
+      }
+      return count;
+   }
+
+   /**
+    * Generates the moves of the given pawns.
+    *
+    * @param pawns       the pawns to process
+    * @param pinMask     the pawns may only move to squares in this mask (the line to the king for a pinned pawn)
+    * @param checkMask   squares which capture the checking piece or block the check (all squares if not in check)
+    * @param occupied    occupied squares
+    * @param theirs      squares occupied by the opponent's pieces
+    * @return number of moves
+    */
+   private static int generatePawnMoves(Position posn, Colour colour, MoveList moves, boolean capturesOnly, long pawns, long pinMask,
+         long checkMask, long occupied, long theirs) {
+      final int forward = colour == Colour.WHITE ? -8 : 8;
+      final long promotionRank = colour == Colour.WHITE ? RANK_8 : RANK_1;
+      final long startRank = colour == Colour.WHITE ? RANK_2 : RANK_7;
+      final long allowed = pinMask & checkMask;
+      int count = 0;
+      for (; pawns != 0; pawns &= pawns - 1) {
+         int from = Long.numberOfTrailingZeros(pawns);
+         long targets = LeaperAttacks.pawnAttacks(colour, from) & theirs;
+         long oneForward = 1L << (from + forward);
+         if ((occupied & oneForward) == 0) {
+            if (!capturesOnly || (oneForward & promotionRank) != 0) { targets |= oneForward; }
+            int twoForward = from + 2 * forward;
+            if (!capturesOnly && ((1L << from) & startRank) != 0 && (occupied & (1L << twoForward)) == 0 && (allowed & (1L << twoForward)) != 0) {
+               count += add(moves, PackedMove.encode(from, twoForward, false, (byte) 0, false, false, false, true));
+            }
+         }
+         for (targets &= allowed; targets != 0; targets &= targets - 1) {
+            int to = Long.numberOfTrailingZeros(targets);
+            boolean capture = (theirs & (1L << to)) != 0;
+            if (((1L << to) & promotionRank) != 0) {
+               for (byte promotedPiece : PROMOTION_PIECES[colour.ordinal()]) {
+                  count += addWithCapturedPiece(posn, moves, PackedMove.encode(from, to, capture, promotedPiece, false, false, false, false));
+               }
+            } else {
+               count += addWithCapturedPiece(posn, moves, PackedMove.encode(from, to, capture, (byte) 0, false, false, false, false));
+            }
+         }
+      }
+      return count;
+   }
+
+   /**
+    * Whether castling is possible: the squares between king and rook must be empty, and the squares the king passes over (and lands on)
+    * must not be attacked. Whether the king is in check is not verified here.
+    *
+    * @param sideOfBoard 0 for king's side, 1 for queen's side
+    */
+   private static boolean canCastle(Position posn, Colour colour, int sideOfBoard, long occupied, long theirPawns, long theirKnights,
+         long theirBishopsQueens, long theirRooksQueens, long theirKing) {
+      int us = colour.ordinal();
+      int rookSq = MoveGenerator.rooksCastlingSquareIndex[us][sideOfBoard];
+      if (!Pieces.isRook(posn.pieceAt(rookSq))) {
+         throw new IllegalStateException("rook not present for " + colour + " castling " + (sideOfBoard == 0 ? "king's" : "queen's") + " side? posn:\n" + posn);
+      }
+      int kingSq = MoveGenerator.kingsCastlingSquareIndex[us];
+      if ((BETWEEN[kingSq][rookSq] & occupied) != 0) { return false; }
+      // the king passes over the rook's target square
+      return attackers(MoveGenerator.rooksSquareAfterCastling[us][sideOfBoard], occupied, us, theirPawns, theirKnights, theirBishopsQueens,
+            theirRooksQueens, theirKing) == 0
+            && attackers(MoveGenerator.kingsSquareAfterCastling[us][sideOfBoard], occupied, us, theirPawns, theirKnights, theirBishopsQueens,
+                  theirRooksQueens, theirKing) == 0;
+   }
+
+   /**
+    * @param sq      the square
+    * @param colour  ordinal of the colour of the defending side
+    * @param king    bitboard of the opponent's king, 0 if not relevant
+    * @return the opponent's pieces attacking the given square
+    */
+   private static long attackers(int sq, long occupied, int colour, long pawns, long knights, long bishopsQueens, long rooksQueens, long king) {
+      return (LeaperAttacks.pawnAttacks(colour, sq) & pawns) | (LeaperAttacks.knightAttacks(sq) & knights)
+            | (LeaperAttacks.kingAttacks(sq) & king) | (MagicBitboards.bishopAttacks(sq, occupied) & bishopsQueens)
+            | (MagicBitboards.rookAttacks(sq, occupied) & rooksQueens);
+   }
+
+   /**
+    * @return true if the given move checks the opponent's king, directly or with a discovered check
+    */
+   private static boolean givesCheck(Position posn, int move, Colour colour, long occupied, long ourBishopsQueens, long ourRooksQueens,
+         int opponentsKingsSq) {
+      final int from = PackedMove.getOrigin(move);
+      final int to = PackedMove.getTarget(move);
+      final long opponentsKing = 1L << opponentsKingsSq;
+      long occupiedAfterMove = (occupied & ~(1L << from)) | (1L << to);
+      long bishopsQueens = ourBishopsQueens & ~(1L << from);
+      long rooksQueens = ourRooksQueens & ~(1L << from);
+      byte piece = PackedMove.isPromotion(move) ? PackedMove.getPromotedPiece(move) : posn.pieceAt(from);
+
+      if (PackedMove.isKingssideCastling(move) || PackedMove.isQueenssideCastling(move)) {
+         int sideOfBoard = PackedMove.isKingssideCastling(move) ? 0 : 1;
+         long rookFrom = 1L << MoveGenerator.rooksCastlingSquareIndex[colour.ordinal()][sideOfBoard];
+         long rookTo = 1L << MoveGenerator.rooksSquareAfterCastling[colour.ordinal()][sideOfBoard];
+         occupiedAfterMove = (occupiedAfterMove & ~rookFrom) | rookTo;
+         rooksQueens = (rooksQueens & ~rookFrom) | rookTo;
+      } else if (Pieces.isPawn(piece)) {
+         if ((LeaperAttacks.pawnAttacks(colour, to) & opponentsKing) != 0) { return true; }
+         if (PackedMove.isEnpassant(move)) { occupiedAfterMove &= ~(1L << PackedMove.getSquareOfPawnCapturedEnpassant(move)); }
+      } else if (Pieces.isKnight(piece)) {
+         if ((LeaperAttacks.knightAttacks(to) & opponentsKing) != 0) { return true; }
+      } else if (!Pieces.isKing(piece)) {
+         if (Pieces.isBishopOrQueen(piece)) { bishopsQueens |= 1L << to; }
+         if (Pieces.isRookOrQueen(piece)) { rooksQueens |= 1L << to; }
+      }
+      // sliding pieces which attack the king after the move: the moved piece itself or a discovered check
+      return ((MagicBitboards.bishopAttacks(opponentsKingsSq, occupiedAfterMove) & bishopsQueens)
+            | (MagicBitboards.rookAttacks(opponentsKingsSq, occupiedAfterMove) & rooksQueens)) != 0;
+   }
+
+   /** adds moves from 'from' to all squares of 'targets' */
+   private static int addMoves(Position posn, MoveList moves, int from, long targets, long theirs) {
+      int count = Long.bitCount(targets);
+      if (moves != null) {
+         for (; targets != 0; targets &= targets - 1) {
+            int to = Long.numberOfTrailingZeros(targets);
+            moves.add(addCapturedPiece(posn, PackedMove.encode(from, to, (theirs & (1L << to)) != 0, (byte) 0, false, false, false, false)));
+         }
+      }
+      return count;
+   }
+
+   private static int addWithCapturedPiece(Position posn, MoveList moves, int move) {
+      return add(moves, moves == null ? move : addCapturedPiece(posn, move));
+   }
+
+   private static int addCapturedPiece(Position posn, int move) {
+      return PackedMove.isCapture(move) ? PackedMove.withCapturedPiece(move, posn.pieceAt(PackedMove.getTarget(move))) : move;
+   }
+
+   private static int add(MoveList moves, int move) {
+      if (moves != null) { moves.add(move); }
+      return 1;
+   }
+}
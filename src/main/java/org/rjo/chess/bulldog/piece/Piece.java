@@ -190,6 +190,13 @@ public enum Piece {
 		this.squareValues = squareValues;
 	}
 
+	/**
+	 * @return piece value in centipawns (without the piece-square value)
+	 */
+	public int getValue() {
+		return pieceValue;
+	}
+
 	public boolean isSlidingPiece() {
 		return slidingPiece;
 	}
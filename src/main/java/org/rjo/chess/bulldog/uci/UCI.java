@@ -1,14 +1,18 @@
 package org.rjo.chess.bulldog.uci;
 
 import java.io.OutputStream;
+import java.io.PrintStream;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
 
 import org.rjo.chess.bulldog.board.Board.Square;
 import org.rjo.chess.bulldog.eval.AlphaBeta3;
 import org.rjo.chess.bulldog.eval.MoveInfo;
+import org.rjo.chess.bulldog.eval.SearchLimits;
 import org.rjo.chess.bulldog.eval.SearchStrategy;
+import org.rjo.chess.bulldog.eval.TranspositionTable;
 import org.rjo.chess.bulldog.game.Fen;
 import org.rjo.chess.bulldog.game.Game;
 import org.rjo.chess.bulldog.game.Position.PieceSquareInfo;
@@ -25,13 +29,42 @@ import org.rjo.chess.bulldog.piece.Pieces;
  * @author rich
  */
 public class UCI {
+   private static final int MAX_HASH_SIZE_IN_MB = 1024;
+   private static final int MAX_THREADS = 256;
+
    private Game game;
 
    private MoveInfo moveinfo;
 
+   // the current search (started by "go") runs in its own thread, so that "stop" can be processed.
+   // The strategy is kept between moves (so that e.g. the transposition table can be reused), and is only recreated if an option changes.
+   private SearchStrategy strategy;
+   private Thread searchThread;
+   // released by "stop": after "go infinite", the best move may only be sent when the GUI has sent "stop"
+   private CountDownLatch stopRequested;
+
+   // where the responses are sent
+   private final PrintStream out;
+
    // set after "processCommandPosition" to store the last move from the uci string
    private IMove lastMove;
 
+   // size of the transposition table, can be set with "setoption name Hash value x"
+   private int hashSizeInMB = TranspositionTable.DEFAULT_SIZE_IN_MB;
+   // number of search threads, can be set with "setoption name Threads value x"
+   private int nbrThreads = 1;
+
+   public UCI() {
+      this(System.out);
+   }
+
+   /**
+    * @param out where the responses are sent
+    */
+   public UCI(PrintStream out) {
+      this.out = out;
+   }
+
    public static void main(String[] args) {
       UCI uci = new UCI();
       uci.run();
@@ -84,6 +117,9 @@ public class UCI {
          case "isready":
             processCommandIsReady();
             break;
+         case "ucinewgame":
+            processCommandUciNewGame();
+            break;
          case "go":
             processCommandGo(lineScanner);
             break;
@@ -93,11 +129,15 @@ public class UCI {
          case "position":
             processCommandPosition(lineScanner);
             break;
+         case "setoption":
+            processCommandSetOption(lineScanner);
+            break;
          case "quit":
+            processCommandStop();
             finished = true;
             break;
          default:
-            System.out.println("unrecognised: " + nextCmd);
+            out.println("unrecognised: " + nextCmd);
          }
       } else {
          finished = true;
@@ -106,30 +146,105 @@ public class UCI {
    }
 
    private void processCommandIsReady() {
-      System.out.println("readyok");
+      // create the strategy now, so that allocating the transposition table does not count towards the time for the first move
+      getStrategy();
+      out.println("readyok");
    }
 
-   private void processCommandGo(Scanner lineScanner) {
-      boolean infinite = lineScanner.hasNext() && "infinite".equals(lineScanner.next());
-
-      SearchStrategy strategy = new AlphaBeta3(System.out /* , game.getZobristMap() */);
+   private void processCommandUciNewGame() {
+      processCommandStop();
+      getStrategy().clear();
+   }
 
-      // UCI reporter thread
-      UciReporter uciReporter = new UciReporter(strategy, System.out);
-      new Thread(uciReporter).start();
+   /**
+    * @return the search strategy, which is created if not yet present
+    */
+   private SearchStrategy getStrategy() {
+      if (strategy == null) {
+         strategy = new AlphaBeta3(out, hashSizeInMB, nbrThreads);
+         strategy.clear(); // allocates the transposition table
+      }
+      return strategy;
+   }
 
-      moveinfo = _findMove(strategy);
+   private void processCommandGo(Scanner lineScanner) {
+      processCommandStop();
+      SearchLimits limits = parseSearchLimits(lineScanner);
+      final SearchStrategy searchStrategy = getStrategy();
+      final CountDownLatch stopSignal = new CountDownLatch(1);
+      stopRequested = stopSignal;
+      searchThread = new Thread(() -> {
+         // UCI reporter thread
+         UciReporter uciReporter = new UciReporter(searchStrategy, out);
+         new Thread(uciReporter).start();
+
+         moveinfo = _findMove(searchStrategy, limits);
+
+         uciReporter.setStop(true);
+         // the search can finish by itself (e.g. maximum depth reached), but with "go infinite" the GUI expects the best move after "stop"
+         if (limits.isInfinite()) {
+            try {
+               stopSignal.await();
+            } catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+            }
+         }
+         out.println("bestmove " + moveinfo.getMove().toUCIString());
+      }, "search");
+      searchThread.start();
+   }
 
-      uciReporter.setStop(true);
-      if (!infinite) { System.out.println("bestmove " + moveinfo.getMove().toUCIString()); }
+   /**
+    * Parses the parameters of the "go" command. Unknown parameters (e.g. "ponder", "searchmoves") are ignored.
+    *
+    * @param lineScanner the rest of the command line
+    * @return the search limits
+    */
+   static SearchLimits parseSearchLimits(Scanner lineScanner) {
+      SearchLimits limits = new SearchLimits();
+      while (lineScanner.hasNext()) {
+         String param = lineScanner.next();
+         switch (param) {
+         case "wtime":
+            limits.setTime(Colour.WHITE, lineScanner.nextLong());
+            break;
+         case "btime":
+            limits.setTime(Colour.BLACK, lineScanner.nextLong());
+            break;
+         case "winc":
+            limits.setIncrement(Colour.WHITE, lineScanner.nextLong());
+            break;
+         case "binc":
+            limits.setIncrement(Colour.BLACK, lineScanner.nextLong());
+            break;
+         case "movestogo":
+            limits.setMovesToGo(lineScanner.nextInt());
+            break;
+         case "movetime":
+            limits.setMoveTime(lineScanner.nextLong());
+            break;
+         case "depth":
+            limits.setDepth(lineScanner.nextInt());
+            break;
+         case "nodes":
+            limits.setNodes(lineScanner.nextLong());
+            break;
+         case "infinite":
+            limits.setInfinite(true);
+            break;
+         default:
+            // ignore
+         }
+      }
+      return limits;
    }
 
    /** for tests */
    public MoveInfo findMove(SearchStrategy strategy) {
-      return _findMove(strategy);
+      return strategy.findMove(game.getPosition());
    }
 
-   private MoveInfo _findMove(SearchStrategy strategy) {
+   private MoveInfo _findMove(SearchStrategy strategy, SearchLimits limits) {
 
       // Map<PieceType, Integer>[] pieceCounts = analysePosition(game.getPosition());
       //
@@ -148,7 +263,7 @@ public class UCI {
       // // game.getZobristMap().clear();
       // }
 
-      return strategy.findMove(game.getPosition());
+      return strategy.findMove(game.getPosition(), limits);
    }
 
    // private Map<PieceType, Integer>[] analysePosition(Position position) {
@@ -184,8 +299,19 @@ public class UCI {
       return inEndgame;
    }
 
+   /**
+    * Stops the current search (if any). The search thread will then print the best move.
+    */
    private void processCommandStop() {
-      if (moveinfo != null) { System.out.println("bestmove " + moveinfo.getMove().toUCIString()); }
+      if (searchThread != null && searchThread.isAlive()) {
+         stopRequested.countDown();
+         strategy.stop();
+         try {
+            searchThread.join();
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+      }
    }
 
    private void processCommandPosition(Scanner lineScanner) {
@@ -223,7 +349,7 @@ public class UCI {
                   m = new CheckMoveDecorator(m, checkSquares);
                   game.getPosition().setKingInCheck();
                }
-               System.out.println("after move " + m + ", fen:" + Fen.encode(game));
+               out.println("after move " + m + ", fen:" + Fen.encode(game));
             }
          }
       }
@@ -286,9 +412,54 @@ public class UCI {
    }
 
    private void processCommandUci() {
-      System.out.println("id name bulldog 2.0");
-      System.out.println("id author rjo67");
-      System.out.println("uciok");
+      out.println("id name bulldog 2.0");
+      out.println("id author rjo67");
+      out.println("option name Hash type spin default " + TranspositionTable.DEFAULT_SIZE_IN_MB + " min 1 max " + MAX_HASH_SIZE_IN_MB);
+      out.println("option name Threads type spin default 1 min 1 max " + MAX_THREADS);
+      out.println("uciok");
+   }
+
+   private void processCommandSetOption(Scanner lineScanner) {
+      // setoption name <id> [value <x>]
+      if (!lineScanner.hasNext() || !"name".equals(lineScanner.next())) { return; }
+      String name = lineScanner.next();
+      if ("Hash".equalsIgnoreCase(name) && lineScanner.hasNext() && "value".equals(lineScanner.next())) {
+         int newHashSize = parseSpinValue(lineScanner, 1, MAX_HASH_SIZE_IN_MB, hashSizeInMB);
+         if (newHashSize != hashSizeInMB) {
+            hashSizeInMB = newHashSize;
+            discardStrategy();
+         }
+      } else if ("Threads".equalsIgnoreCase(name) && lineScanner.hasNext() && "value".equals(lineScanner.next())) {
+         int newNbrThreads = parseSpinValue(lineScanner, 1, MAX_THREADS, nbrThreads);
+         if (newNbrThreads != nbrThreads) {
+            nbrThreads = newNbrThreads;
+            discardStrategy();
+         }
+      } else {
+         out.println("unrecognised option: " + name);
+      }
+   }
+
+   /**
+    * Parses the value of a 'spin' option, clamped to [min, max].
+    *
+    * @return the new value, or 'currentValue' if the value is missing or not a number
+    */
+   private int parseSpinValue(Scanner lineScanner, int min, int max, int currentValue) {
+      if (!lineScanner.hasNext()) { return currentValue; }
+      String value = lineScanner.next();
+      try {
+         return Math.max(min, Math.min(max, Integer.parseInt(value)));
+      } catch (NumberFormatException e) {
+         out.println("invalid value: " + value);
+         return currentValue;
+      }
+   }
+
+   /** the strategy will be recreated with the current options at the next 'go' or 'isready' */
+   private void discardStrategy() {
+      processCommandStop();
+      strategy = null;
    }
 
    static class NullOutputStream extends OutputStream {
@@ -0,0 +1,29 @@
+package org.rjo.chess.bulldog.board;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import org.rjo.chess.bulldog.board.Board.Square;
+import org.rjo.chess.bulldog.piece.Colour;
+
+public class LeaperAttacksTest {
+
+   @Test
+   public void knight() {
+      assertEquals((1L << Square.b6.index()) | (1L << Square.c7.index()), LeaperAttacks.knightAttacks(Square.a8.index()));
+      assertEquals(8, Long.bitCount(LeaperAttacks.knightAttacks(Square.d4.index())));
+   }
+
+   @Test
+   public void king() {
+      assertEquals(3, Long.bitCount(LeaperAttacks.kingAttacks(Square.h1.index())));
+      assertEquals(8, Long.bitCount(LeaperAttacks.kingAttacks(Square.e4.index())));
+   }
+
+   @Test
+   public void pawn() {
+      assertEquals((1L << Square.d5.index()) | (1L << Square.f5.index()), LeaperAttacks.pawnAttacks(Colour.WHITE, Square.e4.index()));
+      assertEquals((1L << Square.d3.index()) | (1L << Square.f3.index()), LeaperAttacks.pawnAttacks(Colour.BLACK, Square.e4.index()));
+      assertEquals(1L << Square.b3.index(), LeaperAttacks.pawnAttacks(Colour.WHITE.ordinal(), Square.a2.index()));
+   }
+}
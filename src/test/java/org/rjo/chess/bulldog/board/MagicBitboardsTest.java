@@ -0,0 +1,54 @@
+package org.rjo.chess.bulldog.board;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.rjo.chess.bulldog.board.Board.Square;
+
+public class MagicBitboardsTest {
+
+   private static final Ray[] ROOK_RAYS = { Ray.NORTH, Ray.EAST, Ray.SOUTH, Ray.WEST };
+
+   @Test
+   public void rookOnEmptyBoard() {
+      // a rook always attacks 14 squares on an empty board
+      for (int sq = 0; sq < 64; sq++) {
+         assertEquals(14, Long.bitCount(MagicBitboards.rookAttacks(sq, 0L)), "bad value for sq=" + Square.toSquare(sq));
+      }
+   }
+
+   @Test
+   public void bishopBlocked() {
+      // bishop on c1, pieces on b2 and e3
+      long occupied = (1L << Square.b2.index()) | (1L << Square.e3.index());
+      long expected = (1L << Square.b2.index()) | (1L << Square.d2.index()) | (1L << Square.e3.index());
+      assertEquals(expected, MagicBitboards.bishopAttacks(Square.c1.index(), occupied));
+   }
+
+   /** the generator finds a working magic number (a full run takes a few seconds, therefore only a few squares are checked) */
+   @Test
+   public void generatorFindsMagics() {
+      Random random = new Random(MagicNumberGenerator.SEED);
+      for (int sq : new int[] { Square.a8.index(), Square.d4.index(), Square.h1.index() }) {
+         long mask = MagicBitboards.relevantOccupancyMask(sq, ROOK_RAYS);
+         long magic = MagicNumberGenerator.findMagic(sq, ROOK_RAYS, random);
+         assertTrue(MagicBitboards.fillAttacks(sq, mask, magic, ROOK_RAYS, new long[1 << Long.bitCount(mask)]));
+      }
+   }
+
+   @Test
+   public void matchesRayWalkForRandomOccupancies() {
+      Random random = new Random(42);
+      for (int i = 0; i < 1000; i++) {
+         long occupied = random.nextLong() & random.nextLong();
+         for (int sq = 0; sq < 64; sq++) {
+            assertEquals(MagicBitboards.slowAttacks(sq, occupied, ROOK_RAYS), MagicBitboards.rookAttacks(sq, occupied));
+            assertEquals(MagicBitboards.slowAttacks(sq, occupied, Ray.RAY_TYPES_DIAGONAL), MagicBitboards.bishopAttacks(sq, occupied));
+            assertEquals(MagicBitboards.slowAttacks(sq, occupied, Ray.values()), MagicBitboards.queenAttacks(sq, occupied));
+         }
+      }
+   }
+}
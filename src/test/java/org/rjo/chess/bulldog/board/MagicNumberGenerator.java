@@ -0,0 +1,56 @@
+package org.rjo.chess.bulldog.board;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Finds the magic numbers which are hard-coded in {@link MagicBitboards}. A fixed seed is used, so the output is always the same.
+ * <p>
+ * Usage: MagicNumberGenerator
+ *
+ * @author rich
+ */
+public class MagicNumberGenerator {
+
+   /** seed for the magic number search -- keeps the tables reproducible */
+   static final long SEED = 0x5EED_B011_D06L;
+
+   public static void main(String[] args) {
+      Random random = new Random(SEED);
+      long[] rookMagics = new long[64];
+      long[] bishopMagics = new long[64];
+      // same order as the original search: rook then bishop for each square
+      for (int sq = 0; sq < 64; sq++) {
+         rookMagics[sq] = findMagic(sq, MagicBitboards.ROOK_RAYS, random);
+         bishopMagics[sq] = findMagic(sq, MagicBitboards.BISHOP_RAYS, random);
+      }
+      print("ROOK_MAGIC", rookMagics);
+      print("BISHOP_MAGIC", bishopMagics);
+   }
+
+   /**
+    * Searches for a magic number for the given square.
+    */
+   static long findMagic(int sq, Ray[] rays, Random random) {
+      long mask = MagicBitboards.relevantOccupancyMask(sq, rays);
+      long[] attacks = new long[1 << Long.bitCount(mask)];
+      while (true) {
+         // candidates with few bits set work best
+         long magic = random.nextLong() & random.nextLong() & random.nextLong();
+         if (Long.bitCount((mask * magic) & 0xFF00_0000_0000_0000L) < 6) { continue; }
+         Arrays.fill(attacks, 0);
+         if (MagicBitboards.fillAttacks(sq, mask, magic, rays, attacks)) { return magic; }
+      }
+   }
+
+   private static void print(String name, long[] magics) {
+      StringBuilder sb = new StringBuilder("   private static final long[] " + name + " = {\n");
+      for (int sq = 0; sq < 64; sq++) {
+         if (sq % 4 == 0) { sb.append("        "); }
+         sb.append(String.format(" 0x%016XL", magics[sq])).append(sq == 63 ? "\n" : ",");
+         if (sq % 4 == 3 && sq != 63) { sb.append("\n"); }
+      }
+      sb.append("   };");
+      System.out.println(sb);
+   }
+}
@@ -1,6 +1,7 @@
 package org.rjo.chess.bulldog.eval;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.Test;
 import org.rjo.chess.bulldog.game.Fen;
@@ -24,7 +25,66 @@ public class AlphaBetaTest {
 		strat.incrementDepth(1);
 		// AlphaBeta3.ORDER_MOVES = false;
 		MoveInfo m = strat.findMove(game.getPosition());
-		assertEquals("d8-f6", m.getMove().toString());
+		// was d8-f6 before the quiescence search was introduced
+		assertEquals("g8-f6", m.getMove().toString());
+	}
+
+	/**
+	 * A search with a time limit. The first search in a JVM spends most of its
+	 * time initialising classes, therefore a short warm-up search is run first, so
+	 * that the result does not depend on how fast the JVM starts.
+	 */
+	@Test
+	public void mateInOneWithTimeLimit() {
+		Game game = Fen.decode("4r1k1/3R2pp/2N3p1/2p5/6PK/r7/6P1/2q5 b - - 67 34");
+		SearchStrategy strat = new AlphaBeta3(System.out);
+		strat.findMove(game.getPosition(), SearchLimits.ofDepth(1));
+
+		SearchLimits limits = new SearchLimits();
+		limits.setMoveTime(1000);
+		MoveInfo m = strat.findMove(game.getPosition(), limits);
+		assertEquals("c1-h6+", m.getMove().toString());
+	}
+
+	/** the clock stops a search which would otherwise run (nearly) forever */
+	@Test
+	public void timeLimitStopsSearch() {
+		Game game = Fen.decode("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 0");
+		SearchStrategy strat = new AlphaBeta3(System.out);
+		strat.findMove(game.getPosition(), SearchLimits.ofDepth(1));
+
+		SearchLimits limits = new SearchLimits();
+		limits.setMoveTime(200);
+		long start = System.currentTimeMillis();
+		MoveInfo m = strat.findMove(game.getPosition(), limits);
+		long elapsed = System.currentTimeMillis() - start;
+		// generous margin, since the time is only checked every few nodes (and the test machine may be busy)
+		assertTrue(elapsed < 5000, "search took " + elapsed + "ms");
+		assertTrue(game.getPosition().findMoves(game.getPosition().getSideToMove()).stream()
+				.anyMatch(move -> move.toString().equals(m.getMove().toString())));
+	}
+
+	@Test
+	public void nodeLimit() {
+		Game game = Fen.decode("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 0");
+		SearchStrategy strat = new AlphaBeta3(System.out);
+		SearchLimits limits = new SearchLimits();
+		limits.setNodes(5000);
+		MoveInfo m = strat.findMove(game.getPosition(), limits);
+		assertTrue(strat.getCurrentNbrNodesSearched() <= 5000);
+		assertTrue(game.getPosition().findMoves(game.getPosition().getSideToMove()).stream()
+				.anyMatch(move -> move.toString().equals(m.getMove().toString())));
+	}
+
+	@Test
+	public void lazySmp() {
+		Game game = Fen.decode("4r1k1/3R2pp/2N3p1/2p5/6PK/r7/6P1/2q5 b - - 67 34");
+		SearchStrategy strat = new AlphaBeta3(System.out, 1, 4);
+		MoveInfo m = strat.findMove(game.getPosition(), SearchLimits.ofDepth(5));
+		assertEquals("c1-h6+", m.getMove().toString());
+		// can be used for a further search
+		m = strat.findMove(game.getPosition(), SearchLimits.ofDepth(3));
+		assertEquals("c1-h6+", m.getMove().toString());
 	}
 
 	// mate in 1 Qc1-h6 posns evaluated:25191
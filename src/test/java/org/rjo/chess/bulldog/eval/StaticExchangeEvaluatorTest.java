@@ -0,0 +1,54 @@
+package org.rjo.chess.bulldog.eval;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import org.rjo.chess.bulldog.game.Fen;
+import org.rjo.chess.bulldog.game.Position;
+import org.rjo.chess.bulldog.move.MoveList;
+import org.rjo.chess.bulldog.move.PackedMove;
+
+public class StaticExchangeEvaluatorTest {
+
+	@Test
+	public void undefendedPawn() {
+		assertEquals(100, see("1k1r4/1pp4p/p7/4p3/8/P5P1/1PP4P/2K1R3 w - - 0 1", "e1xe5"));
+	}
+
+	/** includes x-rays: white queen behind the rook, black queen behind the bishop */
+	@Test
+	public void defendedPawn() {
+		assertEquals(100 - 320, see("1k1r3q/1ppn3p/p4b2/4p3/8/P2N2P1/1PP1R1BP/2K1Q3 w - - 0 1", "d3xe5"));
+	}
+
+	@Test
+	public void pawnTakesDefendedRook() {
+		assertEquals(500 - 100, see("4k3/4p3/3r4/2P5/8/8/8/4K3 w - - 0 1", "c5xd6"));
+	}
+
+	@Test
+	public void promotion() {
+		// capture the rook and promote, cannot be recaptured
+		assertEquals(500 + 900 - 100, see("1r2k3/P7/8/8/8/8/8/4K3 w - - 0 1", "a7xb8=Q"));
+		// the new queen is captured by the rook
+		assertEquals(-100, see("1r2k3/P7/8/8/8/8/8/4K3 w - - 0 1", "a7-a8=Q"));
+	}
+
+	@Test
+	public void enpassant() {
+		// black pawn on c7 recaptures
+		assertEquals(0, see("4k3/2p5/8/3pP3/8/8/8/4K3 w - d6 0 1", "e5xd6"));
+	}
+
+	private int see(String fen, String moveStr) {
+		Position posn = Fen.decode(fen).getPosition();
+		MoveList moves = new MoveList();
+		posn.findMoves(posn.getSideToMove(), moves);
+		for (int i = 0; i < moves.size(); i++) {
+			if (PackedMove.toString(moves.get(i)).startsWith(moveStr)) {
+				return new StaticExchangeEvaluator().evaluate(posn, moves.get(i));
+			}
+		}
+		throw new IllegalArgumentException("move " + moveStr + " not found in " + moves);
+	}
+}
@@ -0,0 +1,107 @@
+package org.rjo.chess.bulldog.eval;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.rjo.chess.bulldog.board.Board.Square;
+import org.rjo.chess.bulldog.move.Move;
+import org.rjo.chess.bulldog.move.PackedMove;
+
+public class TranspositionTableTest {
+
+	@Test
+	public void storeAndProbe() {
+		TranspositionTable tt = new TranspositionTable(1);
+		int move = Move.createCapture(Square.e4.index(), Square.d5.index(), (byte) 1).toPackedMove() | PackedMove.CHECK;
+		tt.store(0x1234_5678_9ABC_DEF0L, move, -1234, 7, TranspositionTable.LOWER_BOUND);
+		long data = tt.probe(0x1234_5678_9ABC_DEF0L);
+		assertEquals(move, TranspositionTable.getMove(data));
+		assertEquals(-1234, TranspositionTable.getScore(data));
+		assertEquals(7, TranspositionTable.getDepth(data));
+		assertEquals(TranspositionTable.LOWER_BOUND, TranspositionTable.getBound(data));
+		assertEquals(TranspositionTable.NOT_FOUND, tt.probe(0x1234_5678_9ABC_DEF1L));
+	}
+
+	@Test
+	public void scoreRange() {
+		for (int score : new int[] { -99999, -1, 0, 1, 99999 }) {
+			assertEquals(score, TranspositionTable.getScore(TranspositionTable.encode(0, score, 0, TranspositionTable.EXACT, 0)));
+		}
+	}
+
+	@Test
+	public void size() {
+		assertEquals(65536, new TranspositionTable(1).size());
+		assertThrows(IllegalArgumentException.class, () -> new TranspositionTable(0));
+	}
+
+	/** keys which map to the same bucket */
+	@Test
+	public void replacement() {
+		TranspositionTable tt = new TranspositionTable(1);
+		long key1 = 1L << 40;
+		long key2 = 2L << 40;
+		long key3 = 3L << 40;
+		tt.store(key1, 0, 10, 5, TranspositionTable.EXACT);
+		tt.store(key2, 0, 20, 3, TranspositionTable.EXACT);
+		// bucket is full, the shallower entry is replaced
+		tt.store(key3, 0, 30, 4, TranspositionTable.EXACT);
+		assertEquals(10, TranspositionTable.getScore(tt.probe(key1)));
+		assertEquals(TranspositionTable.NOT_FOUND, tt.probe(key2));
+		assertEquals(30, TranspositionTable.getScore(tt.probe(key3)));
+
+		// entries from a previous search are replaced first, regardless of depth
+		tt.newSearch();
+		tt.store(key2, 0, 20, 1, TranspositionTable.EXACT);
+		assertEquals(TranspositionTable.NOT_FOUND, tt.probe(key3));
+		tt.store(key3, 0, 30, 1, TranspositionTable.EXACT);
+		assertEquals(TranspositionTable.NOT_FOUND, tt.probe(key1));
+	}
+
+	@Test
+	public void sameKeyKeepsBestMove() {
+		TranspositionTable tt = new TranspositionTable(1);
+		tt.store(42, 1234, 10, 5, TranspositionTable.EXACT);
+		tt.store(42, PackedMove.NO_MOVE, 15, 1, TranspositionTable.UPPER_BOUND);
+		long data = tt.probe(42);
+		assertEquals(1234, TranspositionTable.getMove(data));
+		assertEquals(15, TranspositionTable.getScore(data));
+	}
+
+	/** entries written and read by several threads at once must never mix up the data of different keys */
+	@Test
+	public void concurrentAccess() throws InterruptedException {
+		TranspositionTable tt = new TranspositionTable(1);
+		AtomicBoolean mismatch = new AtomicBoolean();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int seed = t;
+			threads[t] = new Thread(() -> {
+				Random random = new Random(seed);
+				for (int i = 0; i < 200_000; i++) {
+					// few distinct keys, so that the threads write to the same entries
+					long key = random.nextInt(1024) * 0x9E37_79B9_7F4A_7C15L;
+					int score = (int) (key >>> 50);
+					if (random.nextBoolean()) {
+						tt.store(key, 0, score, seed, TranspositionTable.EXACT);
+					} else {
+						long data = tt.probe(key);
+						if (data != TranspositionTable.NOT_FOUND && TranspositionTable.getScore(data) != score) {
+							mismatch.set(true);
+						}
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertFalse(mismatch.get());
+	}
+}
@@ -0,0 +1,47 @@
+package org.rjo.chess.bulldog.eval;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.rjo.chess.bulldog.game.Fen;
+import org.rjo.chess.bulldog.game.Game;
+
+public class YoungBrothersWaitSearchTest {
+
+	@Test
+	public void mateInOne() {
+		Game game = Fen.decode("4r1k1/3R2pp/2N3p1/2p5/6PK/r7/6P1/2q5 b - - 67 34");
+		SearchStrategy strat = new YoungBrothersWaitSearch(System.out, 4);
+		MoveInfo m = strat.findMove(game.getPosition());
+		assertEquals("c1-h6+", m.getMove().toString());
+	}
+
+	// same positions as in MatePuzzlesTest
+	@Test
+	public void mateInTwoA() {
+		Game game = Fen.decode("4r1k1/pQ3pp1/7p/4q3/4r3/P7/1P2nPPP/2BR1R1K b - - 0 1");
+		SearchStrategy strat = new YoungBrothersWaitSearch(System.out, 4);
+		MoveInfo mi = strat.findMove(game.getPosition());
+		assertEquals("e5xh2+([h1xh2, e4-h4+])", mi.toString());
+	}
+
+	@Test
+	public void mateInTwoB() {
+		Game game = Fen.decode("r4R2/1b2n1pp/p2Np1k1/1pn5/4pP1P/8/PPP1B1P1/2K4R w - - 1 0");
+		SearchStrategy strat = new YoungBrothersWaitSearch(System.out, 4);
+		MoveInfo mi = strat.findMove(game.getPosition());
+		assertEquals("h4-h5+([g6-h6, d6-f7+])", mi.toString());
+	}
+
+	@Test
+	public void nodeLimit() {
+		Game game = Fen.decode("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 0");
+		SearchStrategy strat = new YoungBrothersWaitSearch(System.out, 4);
+		SearchLimits limits = new SearchLimits();
+		limits.setNodes(20000);
+		MoveInfo m = strat.findMove(game.getPosition(), limits);
+		assertTrue(game.getPosition().findMoves(game.getPosition().getSideToMove()).stream()
+				.anyMatch(move -> move.toString().equals(m.getMove().toString())));
+	}
+}
@@ -0,0 +1,59 @@
+package org.rjo.chess.bulldog.game;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+public class PerftCacheTest {
+
+   @Test
+   public void storeAndProbe() {
+      PerftCache cache = new PerftCache(1);
+      cache.store(0x1234_5678_9ABC_DEF0L, 5, 164_075_551_000L);
+      assertEquals(164_075_551_000L, cache.probe(0x1234_5678_9ABC_DEF0L, 5));
+      assertEquals(PerftCache.NOT_FOUND, cache.probe(0x1234_5678_9ABC_DEF0L, 4));
+      assertEquals(PerftCache.NOT_FOUND, cache.probe(0x1234_5678_9ABC_DEF1L, 5));
+      cache.clear();
+      assertEquals(PerftCache.NOT_FOUND, cache.probe(0x1234_5678_9ABC_DEF0L, 5));
+   }
+
+   @Test
+   public void sameKeyDifferentDepths() {
+      PerftCache cache = new PerftCache(1);
+      for (int depth = 1; depth < 8; depth++) {
+         cache.store(42L, depth, depth * 1000L);
+      }
+      for (int depth = 1; depth < 8; depth++) {
+         assertEquals(depth * 1000L, cache.probe(42L, depth));
+      }
+   }
+
+   /** a shallower result must not replace a deeper result in the same bucket */
+   @Test
+   public void replacement() {
+      PerftCache cache = new PerftCache(1);
+      // same bucket, since the bucket is chosen using (key + depth)
+      long key1 = 1L << 40;
+      long key2 = (2L << 40) + 1;
+      long key3 = (3L << 40) + 1;
+      cache.store(key1, 3, 100);
+      cache.store(key2, 2, 200);
+      assertEquals(200, cache.probe(key2, 2));
+      cache.store(key3, 2, 300);
+      assertEquals(100, cache.probe(key1, 3));
+      assertEquals(PerftCache.NOT_FOUND, cache.probe(key2, 2));
+      assertEquals(300, cache.probe(key3, 2));
+      // the same depth replaces the first entry
+      cache.store(key2 - 1, 3, 400);
+      assertEquals(PerftCache.NOT_FOUND, cache.probe(key1, 3));
+      assertEquals(400, cache.probe(key2 - 1, 3));
+   }
+
+   @Test
+   public void size() {
+      assertEquals(65536, new PerftCache(1).size());
+      assertThrows(IllegalArgumentException.class, () -> new PerftCache(0));
+      assertThrows(IllegalArgumentException.class, () -> new PerftCache(1).store(1L, 0, 1));
+   }
+}
@@ -0,0 +1,107 @@
+package org.rjo.chess.bulldog.game;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class PerftCoordinatorTest {
+
+   private static final String POSN6 = "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10";
+
+   /** coordinator and workers each need their own thread */
+   private final ExecutorService executor = Executors.newCachedThreadPool();
+
+   @AfterEach
+   public void shutdown() {
+      executor.shutdownNow();
+   }
+
+   @Test
+   public void twoWorkers() throws Exception {
+      try (PerftCoordinator coordinator = new PerftCoordinator(POSN6, 3, 2, 0, new PrintStream(new ByteArrayOutputStream()))) {
+         assertEquals(2079, coordinator.getNbrUnits());
+         CompletableFuture<Long> result = runCoordinator(coordinator);
+         CompletableFuture<Integer> worker1 = runWorker(coordinator.getPort());
+         CompletableFuture<Integer> worker2 = runWorker(coordinator.getPort());
+         assertEquals(89890, result.get(2, TimeUnit.MINUTES));
+         assertEquals(2079, worker1.get(1, TimeUnit.MINUTES) + worker2.get(1, TimeUnit.MINUTES));
+         assertEquals(0, coordinator.getNbrReassigned());
+      }
+   }
+
+   /** a worker which disappears after receiving a work unit. The unit must be counted by another worker */
+   @Test
+   public void workerDies() throws Exception {
+      try (PerftCoordinator coordinator = new PerftCoordinator(POSN6, 3, 2, 0, new PrintStream(new ByteArrayOutputStream()))) {
+         CompletableFuture<Long> result = runCoordinator(coordinator);
+         try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), coordinator.getPort());
+               BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+               PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8)) {
+            out.println(PerftCoordinator.GET);
+            assertTrue(in.readLine().startsWith(PerftCoordinator.UNIT));
+         }
+         CompletableFuture<Integer> worker = runWorker(coordinator.getPort());
+         assertEquals(89890, result.get(2, TimeUnit.MINUTES));
+         assertEquals(2079, worker.get(1, TimeUnit.MINUTES));
+         assertEquals(1, coordinator.getNbrReassigned());
+      }
+   }
+
+   /** a worker which stops replying after receiving a work unit, without closing the connection */
+   @Test
+   public void workerHangs() throws Exception {
+      try (PerftCoordinator coordinator = new PerftCoordinator(POSN6, 3, 2, 0, new PrintStream(new ByteArrayOutputStream()))) {
+         coordinator.setWorkerTimeout(500);
+         CompletableFuture<Long> result = runCoordinator(coordinator);
+         try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), coordinator.getPort());
+               BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+               PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8)) {
+            out.println(PerftCoordinator.GET);
+            assertTrue(in.readLine().startsWith(PerftCoordinator.UNIT));
+            // the connection stays open, but the coordinator gives up waiting for the result
+            assertNull(in.readLine());
+            CompletableFuture<Integer> worker = runWorker(coordinator.getPort());
+            assertEquals(89890, result.get(2, TimeUnit.MINUTES));
+            assertEquals(2079, worker.get(1, TimeUnit.MINUTES));
+            assertEquals(1, coordinator.getNbrReassigned());
+         }
+      }
+   }
+
+   private CompletableFuture<Long> runCoordinator(PerftCoordinator coordinator) {
+      return CompletableFuture.supplyAsync(() -> {
+         try {
+            return coordinator.run();
+         } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+         }
+      }, executor);
+   }
+
+   private CompletableFuture<Integer> runWorker(int port) {
+      return CompletableFuture.supplyAsync(() -> {
+         try {
+            return new PerftWorker(InetAddress.getLoopbackAddress().getHostAddress(), port, 1).run();
+         } catch (IOException e) {
+            throw new IllegalStateException(e);
+         }
+      }, executor);
+   }
+}
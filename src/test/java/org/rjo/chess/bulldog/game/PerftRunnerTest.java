@@ -0,0 +1,64 @@
+package org.rjo.chess.bulldog.game;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PerftRunnerTest {
+
+   private static final String POSN6 = "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10";
+
+   @TempDir
+   Path tempDir;
+
+   @Test
+   public void run() {
+      Path checkpoint = tempDir.resolve("perft.txt");
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      PerftRunner runner = new PerftRunner(POSN6, 3, checkpoint, 2, new PrintStream(out), 0);
+      assertEquals(89890, runner.run());
+      assertEquals(2079, runner.getNbrUnitsCounted());
+      assertEquals(0, runner.getNbrUnitsResumed());
+      assertEquals(2079, out.toString().lines().count());
+
+      // everything is taken from the checkpoint file
+      assertEquals(89890, runner.run());
+      assertEquals(0, runner.getNbrUnitsCounted());
+      assertEquals(2079, runner.getNbrUnitsResumed());
+   }
+
+   /** simulates an interruption by removing lines from the checkpoint file */
+   @Test
+   public void resume() throws IOException {
+      Path checkpoint = tempDir.resolve("perft.txt");
+      PerftRunner runner = new PerftRunner(POSN6, 3, checkpoint, 2, new PrintStream(new ByteArrayOutputStream()), 1000);
+      runner.run();
+      List<String> lines = Files.readAllLines(checkpoint);
+      // keep the header and 1000 units, followed by an incomplete line
+      String content = String.join(System.lineSeparator(), lines.subList(0, 1002)) + System.lineSeparator() + lines.get(1002).substring(0, 8);
+      Files.writeString(checkpoint, content, StandardCharsets.UTF_8);
+
+      assertEquals(89890, runner.run());
+      assertEquals(1000, runner.getNbrUnitsResumed());
+      assertEquals(1079, runner.getNbrUnitsCounted());
+      assertEquals(lines.size(), Files.readAllLines(checkpoint).size());
+   }
+
+   @Test
+   public void checkpointForDifferentDepth() {
+      Path checkpoint = tempDir.resolve("perft.txt");
+      new PerftRunner(POSN6, 2, checkpoint, 1, new PrintStream(new ByteArrayOutputStream()), 1000).run();
+      PerftRunner runner = new PerftRunner(POSN6, 3, checkpoint, 1, new PrintStream(new ByteArrayOutputStream()), 1000);
+      assertThrows(IllegalStateException.class, () -> runner.run());
+   }
+}
@@ -0,0 +1,60 @@
+package org.rjo.chess.bulldog.game;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.rjo.chess.bulldog.game.PerftSuiteRunner.EpdEntry;
+import org.rjo.chess.bulldog.game.PerftSuiteRunner.SuiteResult;
+
+public class PerftSuiteRunnerTest {
+
+   @TempDir
+   Path tempDir;
+
+   @Test
+   public void parse() {
+      EpdEntry entry = PerftSuiteRunner.parse("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - ;D1 20 ;D2 400 ;D3 8902", 3);
+      assertEquals(3, entry.lineNbr());
+      assertEquals("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq -", entry.fen());
+      assertArrayEquals(new long[] { 20, 400, 8902 }, entry.expected());
+      assertThrows(IllegalArgumentException.class, () -> PerftSuiteRunner.parse("8/8/8/8/8/8/8/K6k w - - ;D2 3", 1));
+   }
+
+   @Test
+   public void suite() throws IOException, URISyntaxException {
+      Path epdFile = Paths.get(getClass().getResource("/perftsuite.epd").toURI());
+      SuiteResult result = PerftSuiteRunner.run(epdFile, 3, 2, new PrintStream(new ByteArrayOutputStream()));
+      assertTrue(result.allOk(), result.toCsv());
+      // 12 positions, one of which only has depth 1
+      assertEquals(11 * 3 + 1, result.results().size());
+      assertEquals(result.results().size() + 2, result.toCsv().lines().count());
+      assertTrue(result.toJson().contains("\"ok\": true"));
+      assertTrue(PerftSuiteRunner.meetsBaseline(result, result.movesPerMs(), 0));
+      assertFalse(PerftSuiteRunner.meetsBaseline(result, result.movesPerMs() * 2, 10));
+   }
+
+   @Test
+   public void wrongResult() throws IOException {
+      Path epdFile = tempDir.resolve("wrong.epd");
+      Files.writeString(epdFile, "# comment\n\nr4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10 ;D1 46 ;D2 2078\n");
+      SuiteResult result = PerftSuiteRunner.run(epdFile, 5, 1, new PrintStream(new ByteArrayOutputStream()));
+      assertFalse(result.allOk());
+      assertEquals(2, result.results().size());
+      assertTrue(result.results().get(0).isOk());
+      assertEquals(3, result.results().get(1).lineNbr());
+      assertEquals(2079, result.results().get(1).actual());
+   }
+}
@@ -1,5 +1,6 @@
 package org.rjo.chess.bulldog.game;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 
@@ -7,6 +8,8 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -79,8 +82,8 @@ public class PerftTest {
             Game game = Fen.decode(fenString);
             long start = System.currentTimeMillis();
             // tests run with threads=3 to finish in 24 seconds instead of 40+
-            Map<String, Integer> moveMap = Perft.findMoves(game.getPosition(), sideToMove, depth + 1, 1);
-            int moves = Perft.countMoves(moveMap);
+            Map<String, Long> moveMap = Perft.findMoves(game.getPosition(), sideToMove, depth + 1, 1);
+            long moves = Perft.countMoves(moveMap);
             long time = System.currentTimeMillis() - start;
             // no printout if took less than 500ms
             System.out.println(String.format(Locale.GERMANY, "%40s %2dply: %,12d moves (%,8d ms) (%6.1f moves/ms)", testname, depth + 1, moves, time,
@@ -97,10 +100,83 @@ public class PerftTest {
       // taken from 'posn5', after white's move c2-c3.
       Position p = Fen.decode("rnbqkb1r/pp1p1ppp/2p5/4P3/2B5/2P5/PP2NnPP/RNBQK2R b KQkq - 0 6").getPosition();
       assertFalse(p.isKingInCheck());
-      Map<String, Integer> moveMap = Perft.findMoves(p, Colour.BLACK, 2, 1);
+      Map<String, Long> moveMap = Perft.findMoves(p, Colour.BLACK, 2, 1);
       assertEquals(1362, Perft.countMoves(moveMap));
    }
 
+   @Test
+   public void forkJoin() {
+      // posn6 at depth 3, split over two plies
+      Position p = Fen.decode("r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10").getPosition();
+      Map<String, Long> expected = Perft.findMoves(p, Colour.WHITE, 3, 1);
+      AtomicInteger rootMovesFinished = new AtomicInteger();
+      AtomicLong nodes = new AtomicLong();
+      Map<String, Long> moveMap = Perft.findMovesMultiThreaded(p, Colour.WHITE, 3, 4, 2, (finished, total, nodesSoFar) -> {
+         rootMovesFinished.accumulateAndGet(finished, Math::max);
+         nodes.accumulateAndGet(nodesSoFar, Math::max);
+      });
+      assertEquals(expected, moveMap);
+      assertEquals(89890, Perft.countMoves(moveMap));
+      assertEquals(46, rootMovesFinished.get());
+      assertEquals(89890, nodes.get());
+   }
+
+   /** bulk counting must not change the results */
+   @Test
+   public void bulkCounting() {
+      Position p = Fen.decode("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 0").getPosition();
+      boolean bulkCounting = Perft.isBulkCounting();
+      try {
+         Perft.setBulkCounting(false);
+         Map<String, Long> expected = Perft.findMoves(p, Colour.WHITE, 3, 1);
+         Perft.setBulkCounting(true);
+         assertEquals(expected, Perft.findMoves(p, Colour.WHITE, 3, 1));
+         assertEquals(97862, Perft.countMoves(expected));
+      } finally {
+         Perft.setBulkCounting(bulkCounting);
+      }
+   }
+
+   /** a cached perft must return the same results, also when multi-threaded */
+   @Test
+   public void cache() {
+      Position p = Fen.decode("r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10").getPosition();
+      Map<String, Long> expected = Perft.findMoves(p, Colour.WHITE, 4, 1);
+      try {
+         Perft.setCache(new PerftCache(1));
+         assertEquals(expected, Perft.findMoves(p, Colour.WHITE, 4, 1));
+         // now with results from the previous run
+         assertEquals(expected, Perft.findMoves(p, Colour.WHITE, 4, 1));
+         Perft.setCache(new PerftCache(1));
+         assertEquals(expected, Perft.findMovesMultiThreaded(p, Colour.WHITE, 4, 4, 1, Perft.NO_PROGRESS));
+         assertEquals(3894594, Perft.countMoves(expected));
+      } finally {
+         Perft.setCache(null);
+      }
+   }
+
+   /** compares the statistics with the values from https://www.chessprogramming.org/Perft_Results */
+   @Test
+   public void stats() {
+      Position p = Fen.decode("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 0").getPosition();
+      PerftStats stats = Perft.findStats(p, Colour.WHITE, 3, 4, 2, Perft.NO_PROGRESS);
+      // nodes, captures, e.p., castles, promotions, checks, double checks, checkmates
+      checkStats(stats, 1, 48, 8, 0, 2, 0, 0, 0, 0);
+      checkStats(stats, 2, 2039, 351, 1, 91, 0, 3, 0, 0);
+      checkStats(stats, 3, 97862, 17102, 45, 3162, 0, 993, 0, 1);
+
+      p = Fen.decode("8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 0").getPosition();
+      stats = Perft.findStats(p, Colour.WHITE, 5, 4, 2, Perft.NO_PROGRESS);
+      checkStats(stats, 4, 43238, 3348, 123, 0, 0, 1680, 0, 17);
+      checkStats(stats, 5, 674624, 52051, 1165, 0, 0, 52950, 3, 0);
+   }
+
+   private void checkStats(PerftStats stats, int ply, long... expected) {
+      long[] actual = new long[] { stats.getNodes(ply), stats.getCaptures(ply), stats.getEnpassants(ply), stats.getCastles(ply),
+            stats.getPromotions(ply), stats.getChecks(ply), stats.getDoubleChecks(ply), stats.getCheckmates(ply) };
+      assertArrayEquals(expected, actual, "ply " + ply + "\n" + stats);
+   }
+
    /**
     * Data for the tests. Format is:
     * <ul>
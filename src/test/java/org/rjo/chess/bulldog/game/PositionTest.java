@@ -6,6 +6,7 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.Test;
@@ -16,6 +17,8 @@ import org.rjo.chess.bulldog.move.CheckMoveDecorator;
 import org.rjo.chess.bulldog.move.IMove;
 import org.rjo.chess.bulldog.move.Move;
 import org.rjo.chess.bulldog.move.MoveGenerator;
+import org.rjo.chess.bulldog.move.MoveList;
+import org.rjo.chess.bulldog.move.PackedMove;
 import org.rjo.chess.bulldog.piece.Colour;
 import org.rjo.chess.bulldog.piece.Piece;
 import org.rjo.chess.bulldog.piece.Pieces;
@@ -392,6 +395,60 @@ public class PositionTest {
       assertTrue(TestUtil.squareIsCheckSquare(Square.f3, p2.getCheckSquares()));
    }
 
+   @Test
+   public void makeAndUnmakeMove() {
+      // position with castling, enpassant, promotions and checks
+      for (String fen : new String[] { "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 0",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/Pp2P3/2N2Q1p/1PPBBPPP/R3K2R b KQkq a3 0 0", "n1n5/PPPk4/8/8/8/8/4Kppp/5N1N b - - 0 1",
+            "8/1k6/3P4/2P3P1/KP2N2r/2P2BP1/3P1P2/8 w - - 0 0" }) {
+         Position p = Fen.decode(fen).getPosition();
+         String startFen = p.getFen();
+         MoveList moves = new MoveList();
+         p.findMoves(p.getSideToMove(), moves);
+         for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            Position expected = p.move(move);
+            p.makeMove(move);
+            assertEquals(expected.getFen(), p.getFen(), "after " + PackedMove.toString(move));
+            assertEquals(expected.isKingInCheck(), p.isKingInCheck());
+            assertEquals(expected.getOccupiedBitboard(), p.getOccupiedBitboard());
+            p.unmakeMove();
+            assertEquals(startFen, p.getFen(), "after unmaking " + PackedMove.toString(move));
+            assertEquals(Fen.decode(fen).getPosition().getPiecesBitboard(Colour.WHITE), p.getPiecesBitboard(Colour.WHITE));
+            assertEquals(Fen.decode(fen).getPosition().getPiecesBitboard(Colour.BLACK), p.getPiecesBitboard(Colour.BLACK));
+         }
+      }
+   }
+
+   @Test
+   public void makeAndUnmakeNullMove() {
+      Position p = Fen.decode("r3k2r/p1ppqpb1/bn2pnp1/3PN3/Pp2P3/2N2Q1p/1PPBBPPP/R3K2R b KQkq a3 0 0").getPosition();
+      String startFen = p.getFen();
+      long startKey = p.getZobristKey();
+      p.makeNullMove();
+      assertEquals(Colour.WHITE, p.getSideToMove());
+      assertNull(p.getEnpassantSquare());
+      assertEquals(Zobrist.calculateKey(p), p.getZobristKey());
+      p.unmakeNullMove();
+      assertEquals(startFen, p.getFen());
+      assertEquals(startKey, p.getZobristKey());
+      assertThrows(IllegalStateException.class, () -> p.unmakeNullMove());
+   }
+
+   @Test
+   public void nullMoveNotAllowedInCheck() {
+      Position p = Fen.decode("4k3/8/8/8/8/8/8/4K2r w - - 0 1").getPosition();
+      assertTrue(p.isKingInCheck());
+      assertThrows(IllegalStateException.class, () -> p.makeNullMove());
+   }
+
+   @Test
+   public void hasNonPawnMaterial() {
+      Position p = Fen.decode("4k3/pp6/8/8/8/8/PP6/4K1N1 w - - 0 1").getPosition();
+      assertTrue(p.hasNonPawnMaterial(Colour.WHITE));
+      assertFalse(p.hasNonPawnMaterial(Colour.BLACK));
+   }
+
    @Test
    public void testPerformance() throws InterruptedException {
       // 2 check moves in this position: one is a discovered check from the bishop
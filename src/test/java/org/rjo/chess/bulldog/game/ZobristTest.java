@@ -0,0 +1,74 @@
+package org.rjo.chess.bulldog.game;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import org.junit.jupiter.api.Test;
+import org.rjo.chess.bulldog.move.MoveList;
+import org.rjo.chess.bulldog.move.PackedMove;
+
+public class ZobristTest {
+
+   @Test
+   public void startPosition() {
+      assertEquals(Game.create().getPosition().getZobristKey(),
+            Fen.decode("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1").getPosition().getZobristKey());
+   }
+
+   @Test
+   public void transposition() {
+      Position p1 = Game.create().getPosition();
+      // Nf3, Nf6, Nc3 vs Nc3, Nf6, Nf3
+      p1 = p1.move(findMove(p1, "g1-f3"));
+      p1 = p1.move(findMove(p1, "g8-f6"));
+      p1 = p1.move(findMove(p1, "b1-c3"));
+      Position p2 = Game.create().getPosition();
+      p2 = p2.move(findMove(p2, "b1-c3"));
+      p2 = p2.move(findMove(p2, "g8-f6"));
+      p2 = p2.move(findMove(p2, "g1-f3"));
+      assertEquals(p1.getZobristKey(), p2.getZobristKey());
+      assertEquals(p1, p2);
+      assertEquals(p1.hashCode(), p2.hashCode());
+      assertNotEquals(p1, Game.create().getPosition());
+   }
+
+   @Test
+   public void enpassantSquareChangesKey() {
+      assertNotEquals(Fen.decode("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1").getPosition().getZobristKey(),
+            Fen.decode("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq - 0 1").getPosition().getZobristKey());
+   }
+
+   /** the incrementally updated key must always match the key calculated from scratch */
+   @Test
+   public void incrementalKeyMatchesCalculatedKey() {
+      for (String fen : new String[] { "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 0",
+            "n1n5/PPPk4/8/8/8/8/4Kppp/5N1N b - - 0 1", "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 0" }) {
+         Position posn = Fen.decode(fen).getPosition();
+         long startKey = posn.getZobristKey();
+         checkKeys(posn, 3, new MoveList[] { new MoveList(), new MoveList(), new MoveList(), new MoveList() });
+         assertEquals(startKey, posn.getZobristKey());
+      }
+   }
+
+   private void checkKeys(Position posn, int depth, MoveList[] moveLists) {
+      if (depth == 0) { return; }
+      MoveList moves = moveLists[depth];
+      posn.findMoves(posn.getSideToMove(), moves);
+      for (int i = 0; i < moves.size(); i++) {
+         int move = moves.get(i);
+         posn.makeMove(move);
+         assertEquals(Zobrist.calculateKey(posn), posn.getZobristKey(), "after move " + PackedMove.toString(move) + ", posn: " + posn.getFen());
+         checkKeys(posn, depth - 1, moveLists);
+         posn.unmakeMove();
+      }
+   }
+
+   private int findMove(Position posn, String moveStr) {
+      MoveList moves = new MoveList();
+      posn.findMoves(posn.getSideToMove(), moves);
+      for (int i = 0; i < moves.size(); i++) {
+         if (PackedMove.toString(moves.get(i)).equals(moveStr)) { return moves.get(i); }
+      }
+      throw new IllegalArgumentException("move " + moveStr + " not found");
+   }
+}
@@ -157,8 +157,8 @@ public class CheckTest {
       assertFalse(p.isKingInCheck());
       IMove m = new CheckMoveDecorator(TestUtil.createMove(Square.f4, Square.e2), new PieceSquareInfo(Piece.QUEEN, Square.f5));
       Position p2 = p.move(m);
-      Map<String, Integer> moveMap = Perft.findMoves(p2, Colour.WHITE, 3, 1);
-      int moves = Perft.countMoves(moveMap);
+      Map<String, Long> moveMap = Perft.findMoves(p2, Colour.WHITE, 3, 1);
+      long moves = Perft.countMoves(moveMap);
       // should be 544, was 545: Kf2-g2=143 should be 142
       // assertEquals(544, moves, String.format("wrong nbr of moves at depth 3\nmoveMap: %s\n", moveMap));
       Position p3 = p2.move(TestUtil.createMove(Square.f2, Square.g2));
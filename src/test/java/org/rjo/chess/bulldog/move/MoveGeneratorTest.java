@@ -10,6 +10,7 @@ import org.junit.jupiter.api.Test;
 import org.rjo.chess.bulldog.bits.BitSetFactory;
 import org.rjo.chess.bulldog.bits.BitSetUnifier;
 import org.rjo.chess.bulldog.board.Board.Square;
+import org.rjo.chess.bulldog.game.Fen;
 import org.rjo.chess.bulldog.game.Position;
 import org.rjo.chess.bulldog.piece.Colour;
 import org.rjo.chess.bulldog.piece.Piece;
@@ -41,4 +42,77 @@ public class MoveGeneratorTest {
       System.out.println("kingsMove: " + (System.currentTimeMillis() - start)); // 1_000_000 times: 100-140ms
    }
 
+   /** captures-only mode must return the same captures and promotions as the normal move generation, in the same order */
+   @Test
+   public void capturesAndPromotions() {
+      for (String fen : new String[] { "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 0",
+            "n1n5/PPPk4/8/8/8/8/4Kppp/5N1N b - - 0 1", "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 0",
+            "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8" }) {
+         checkCaptures(Fen.decode(fen).getPosition(), 3);
+      }
+   }
+
+   @Test
+   public void countLegalMoves() {
+      for (String fen : new String[] { "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 0",
+            "n1n5/PPPk4/8/8/8/8/4Kppp/5N1N b - - 0 1", "8/8/2k5/5q2/5n2/8/5K2/8 b - - 0 1", "8/5k2/8/5N2/5Q2/2K5/8/8 w - - 0 1" }) {
+         Position posn = Fen.decode(fen).getPosition();
+         MoveList allMoves = new MoveList();
+         movegen.findMoves(posn, posn.getSideToMove(), allMoves);
+         assertEquals(allMoves.size(), movegen.countLegalMoves(posn, posn.getSideToMove()), fen);
+      }
+   }
+
+   /** the moves generated in packed format (incl. the check flag) must match the IMove objects */
+   @Test
+   public void packedMovesMatchMoveObjects() {
+      for (String fen : new String[] { "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 0",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 0", "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+            "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8", "n1n5/PPPk4/8/8/8/8/4Kppp/5N1N b - - 0 1" }) {
+         checkPackedMoves(Fen.decode(fen).getPosition(), 3);
+      }
+   }
+
+   private void checkPackedMoves(Position posn, int depth) {
+      List<Integer> expected = new ArrayList<>();
+      for (IMove m : movegen.findMoves(posn, posn.getSideToMove())) {
+         expected.add(m.isCapture() ? PackedMove.withCapturedPiece(m.toPackedMove(), posn.pieceAt(m.getTarget())) : m.toPackedMove());
+      }
+      MoveList allMoves = new MoveList();
+      movegen.findMoves(posn, posn.getSideToMove(), allMoves);
+      List<Integer> actual = new ArrayList<>();
+      for (int i = 0; i < allMoves.size(); i++) {
+         actual.add(allMoves.get(i));
+      }
+      expected.sort(null);
+      actual.sort(null);
+      assertEquals(expected, actual, "posn: " + posn.getFen());
+      if (depth > 1) {
+         for (int i = 0; i < allMoves.size(); i++) {
+            posn.makeMove(allMoves.get(i));
+            checkPackedMoves(posn, depth - 1);
+            posn.unmakeMove();
+         }
+      }
+   }
+
+   private void checkCaptures(Position posn, int depth) {
+      MoveList allMoves = new MoveList();
+      movegen.findMoves(posn, posn.getSideToMove(), allMoves);
+      MoveList expected = new MoveList();
+      for (int i = 0; i < allMoves.size(); i++) {
+         int move = allMoves.get(i);
+         if (PackedMove.isCapture(move) || PackedMove.isPromotion(move)) { expected.add(move); }
+      }
+      MoveList captures = new MoveList();
+      movegen.findCapturesAndPromotions(posn, posn.getSideToMove(), captures);
+      assertEquals(expected.toString(), captures.toString(), "posn: " + posn.getFen());
+      if (depth > 1) {
+         for (int i = 0; i < allMoves.size(); i++) {
+            posn.makeMove(allMoves.get(i));
+            checkCaptures(posn, depth - 1);
+            posn.unmakeMove();
+         }
+      }
+   }
 }
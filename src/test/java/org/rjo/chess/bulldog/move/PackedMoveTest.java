@@ -0,0 +1,81 @@
+package org.rjo.chess.bulldog.move;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.rjo.chess.bulldog.board.Board.Square;
+import org.rjo.chess.bulldog.game.Fen;
+import org.rjo.chess.bulldog.game.Position;
+import org.rjo.chess.bulldog.piece.Colour;
+import org.rjo.chess.bulldog.piece.Piece;
+import org.rjo.chess.bulldog.piece.Pieces;
+
+public class PackedMoveTest {
+
+   @Test
+   public void enpassant() {
+      int m = Move.createEnpassantMove(Square.b5.index(), Square.c6.index(), Colour.WHITE).toPackedMove();
+      assertTrue(PackedMove.isCapture(m));
+      assertTrue(PackedMove.isEnpassant(m));
+      assertEquals(Square.c5.index(), PackedMove.getSquareOfPawnCapturedEnpassant(m));
+      assertEquals(Piece.PAWN, PackedMove.getCapturedPieceType(m));
+
+      m = Move.createEnpassantMove(Square.b4.index(), Square.a3.index(), Colour.BLACK).toPackedMove();
+      assertEquals(Square.a4.index(), PackedMove.getSquareOfPawnCapturedEnpassant(m));
+   }
+
+   @Test
+   public void promotion() {
+      int m = Move.createPromotionCaptureMove(Square.b2.index(), Square.a1.index(), (byte) 1, Pieces.generateKnight(Colour.BLACK)).toPackedMove();
+      assertTrue(PackedMove.isPromotion(m));
+      assertTrue(PackedMove.isCapture(m));
+      assertEquals(Pieces.generateKnight(Colour.BLACK), PackedMove.getPromotedPiece(m));
+      assertEquals("b2xa1=N", PackedMove.toString(m));
+   }
+
+   @Test
+   public void castling() {
+      int m = Move.KINGS_CASTLING_MOVE[Colour.BLACK.ordinal()].toPackedMove();
+      assertTrue(PackedMove.isKingssideCastling(m));
+      assertFalse(PackedMove.isQueenssideCastling(m));
+      assertEquals("O-O", PackedMove.toString(m));
+      assertEquals("e8g8", PackedMove.toUCIString(m));
+   }
+
+   @Test
+   public void capturedPiece() {
+      int m = PackedMove.withCapturedPiece(Move.createCapture(Square.a1.index(), Square.a8.index(), (byte) 1).toPackedMove(),
+            Pieces.generateQueen(Colour.BLACK));
+      assertEquals(Piece.QUEEN, PackedMove.getCapturedPieceType(m));
+      assertEquals(Square.a1.index(), PackedMove.getOrigin(m));
+      assertEquals(Square.a8.index(), PackedMove.getTarget(m));
+   }
+
+   /** the MoveList version of findMoves must return the same moves (the order may differ) */
+   @Test
+   public void findMovesWithMoveList() {
+      Position posn = Fen.decode("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 0").getPosition();
+      MoveGenerator moveGenerator = new MoveGenerator();
+      Map<String, IMove> expected = new HashMap<>();
+      for (IMove m : moveGenerator.findMoves(posn, Colour.WHITE)) {
+         expected.put(m.toString(), m);
+      }
+      MoveList moves = new MoveList();
+      moveGenerator.findMoves(posn, Colour.WHITE, moves);
+      assertEquals(expected.size(), moves.size());
+      for (int i = 0; i < moves.size(); i++) {
+         IMove expectedMove = expected.get(PackedMove.toString(moves.get(i)));
+         assertNotNull(expectedMove, "unexpected move " + PackedMove.toString(moves.get(i)));
+         Position expectedPosn = posn.move(expectedMove);
+         Position posnAfterMove = posn.move(moves.get(i));
+         assertEquals(expectedPosn.getFen(), posnAfterMove.getFen());
+         assertEquals(expectedPosn.isKingInCheck(), posnAfterMove.isKingInCheck());
+      }
+   }
+}
@@ -1,11 +1,20 @@
 package org.rjo.chess.bulldog.uci;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
 
 import org.junit.jupiter.api.Test;
+import org.rjo.chess.bulldog.eval.SearchLimits;
 import org.rjo.chess.bulldog.game.Fen;
 import org.rjo.chess.bulldog.game.Game;
 import org.rjo.chess.bulldog.move.IMove;
+import org.rjo.chess.bulldog.piece.Colour;
 
 public class UciTest {
    @Test
@@ -53,4 +62,50 @@ public class UciTest {
       g.getPosition().move(m);
       assertEquals("4R1k1/8/8/8/6PK/r7/8/8 b - - 68 34", Fen.encode(g));
    }
+
+   @Test
+   public void parseSearchLimits() {
+      SearchLimits limits = UCI.parseSearchLimits(new Scanner("wtime 300000 btime 290000 winc 2000 binc 1000 movestogo 40 ponder"));
+      assertEquals(300000, limits.getTime(Colour.WHITE));
+      assertEquals(290000, limits.getTime(Colour.BLACK));
+      assertEquals(2000, limits.getIncrement(Colour.WHITE));
+      assertEquals(1000, limits.getIncrement(Colour.BLACK));
+      assertEquals(40, limits.getMovesToGo());
+      assertFalse(limits.isInfinite());
+
+      limits = UCI.parseSearchLimits(new Scanner("depth 6 nodes 100000 movetime 5000"));
+      assertEquals(6, limits.getDepth());
+      assertEquals(100000, limits.getNodes());
+      assertEquals(5000, limits.getMoveTime());
+   }
+
+   /**
+    * After "go infinite", the best move may only be sent after "stop", even if the search has already found a mate (and therefore cannot
+    * improve).
+    */
+   @Test
+   public void goInfiniteWaitsForStop() throws InterruptedException {
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      UCI uci = new UCI(new PrintStream(output, true, StandardCharsets.UTF_8));
+      // fool's mate: black mates with Qd8-h4
+      processLine(uci, "position startpos moves f2f3 e7e5 g2g4");
+      processLine(uci, "go infinite");
+      // wait until the mate has been found
+      long start = System.currentTimeMillis();
+      while (!output.toString(StandardCharsets.UTF_8).contains("score mate 1") && System.currentTimeMillis() - start < 60_000) {
+         Thread.sleep(50);
+      }
+      assertTrue(output.toString(StandardCharsets.UTF_8).contains("score mate 1"));
+      Thread.sleep(200);
+      assertFalse(output.toString(StandardCharsets.UTF_8).contains("bestmove"));
+
+      processLine(uci, "stop");
+      assertTrue(output.toString(StandardCharsets.UTF_8).contains("bestmove d8h4"));
+   }
+
+   private static void processLine(UCI uci, String line) {
+      try (Scanner lineScanner = new Scanner(line)) {
+         uci.processLine(lineScanner);
+      }
+   }
 }